@@ -0,0 +1,112 @@
+package ai.learning.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Regression gate run after the benchmarks in the {@code jmh} Maven profile.
+ *
+ * Compares a JMH JSON result with a baseline result (same format) and exits non-zero when any
+ * benchmark present in both got worse by more than the tolerance: lower score for throughput
+ * modes, higher score for time modes. A change only counts when it is also larger than the two
+ * scores' 99.9% error margins ({@code scoreError}) added together, i.e. when their confidence
+ * intervals do not overlap; a noisy run is reported as such instead of failing or passing by luck.
+ * A missing baseline file fails the gate, so the build cannot pass without comparing against
+ * something; benchmarks absent from the baseline are only reported.
+ *
+ * To accept new numbers as the baseline, copy {@code target/jmh-result.json} over
+ * {@code src/jmh/baseline.json} (dropping its machine-specific {@code jvm} path). Baselines are
+ * machine specific; record them on the host that runs the gate.
+ *
+ * Usage: {@code BenchmarkGate <result.json> <baseline.json> <tolerance, e.g. 0.10>}
+ */
+public final class BenchmarkGate {
+
+    private BenchmarkGate() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BenchmarkGate <result.json> <baseline.json> <tolerance>");
+            System.exit(2);
+        }
+        Path resultFile = Path.of(args[0]);
+        Path baselineFile = Path.of(args[1]);
+        double tolerance = Double.parseDouble(args[2]);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, Score> results = read(objectMapper, resultFile);
+        if (!Files.exists(baselineFile)) {
+            System.err.printf("No benchmark baseline at %s; record one by copying %s there.%n", baselineFile, resultFile);
+            System.exit(1);
+        }
+        Map<String, Score> baseline = read(objectMapper, baselineFile);
+
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score current = entry.getValue();
+            Score base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.printf("NEW        %s: %.3f %s%n", entry.getKey(), current.value(), current.unit());
+                continue;
+            }
+            double change = (current.value() - base.value()) / base.value();
+            // Throughput modes: higher is better. Time modes (avgt, sample, ss): lower is better.
+            boolean worse = current.higherIsBetter() ? change < -tolerance : change > tolerance;
+            boolean significant = Math.abs(current.value() - base.value()) > current.error() + base.error();
+            boolean regressed = worse && significant;
+            System.out.printf("%-10s %s: %.3f +/- %.3f -> %.3f +/- %.3f %s (%+.1f%%)%n",
+                    regressed ? "REGRESSED" : worse ? "NOISY" : "ok", entry.getKey(),
+                    base.value(), base.error(), current.value(), current.error(), current.unit(), change * 100);
+            if (regressed) {
+                regressions++;
+            }
+        }
+
+        if (regressions > 0) {
+            System.err.printf("%d benchmark(s) regressed by more than %.0f%% against %s%n",
+                    regressions, tolerance * 100, baselineFile);
+            System.exit(1);
+        }
+    }
+
+    // error: half-width of the 99.9% confidence interval; 0 if JMH had too few samples to compute one.
+    private record Score(double value, double error, String unit, boolean higherIsBetter) {
+    }
+
+    private static Map<String, Score> read(ObjectMapper objectMapper, Path file) throws IOException {
+        Map<String, Score> scores = new HashMap<>();
+        for (JsonNode run : objectMapper.readTree(file.toFile())) {
+            JsonNode metric = run.path("primaryMetric");
+            String mode = run.path("mode").asText();
+            double error = metric.path("scoreError").asDouble(0);
+            scores.put(key(run), new Score(metric.path("score").asDouble(), Double.isNaN(error) ? 0 : error,
+                    metric.path("scoreUnit").asText(), "thrpt".equals(mode.toLowerCase(Locale.ROOT))));
+        }
+        return scores;
+    }
+
+    private static String key(JsonNode run) {
+        StringBuilder key = new StringBuilder(run.path("benchmark").asText());
+        JsonNode params = run.path("params");
+        if (params.isObject()) {
+            Map<String, String> sorted = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                sorted.put(field.getKey(), field.getValue().asText());
+            }
+            key.append(sorted);
+        }
+        return key.append(" [").append(run.path("mode").asText()).append(']').toString();
+    }
+}
@@ -0,0 +1,96 @@
+package ai.learning.benchmark;
+
+import com.nontrauma.migration.migrationutil.service.DateWindows;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Window generation of the range-delete fallback ({@link DateWindows}), with the delete itself
+ * replaced by a stub that rejects chunks wider than {@code limitMonths}, the way Keyspaces rejects
+ * range deletes over too many rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class DateWindowsBenchmark {
+
+    // Years of claims of one member, walked as yearly windows like deleteWindowed does.
+    @Param({"1", "10"})
+    public int spanYears;
+
+    // Widest chunk the stub accepts; 12 never shrinks, 1 walks the whole 12 -> 6 -> 3 -> 1 ladder.
+    @Param({"12", "3", "1"})
+    public int limitMonths;
+
+    private LocalDate first;
+
+    private LocalDate endExclusive;
+
+    @Setup
+    public void setUp() {
+        first = LocalDate.of(2010, 1, 1);
+        endExclusive = first.plusYears(spanYears).minusDays(17);
+    }
+
+    @Benchmark
+    public int monthsBetween() {
+        return DateWindows.monthsBetween(first, endExclusive);
+    }
+
+    @Benchmark
+    public int nextSmallerChunkLadder() {
+        int months = 12;
+        int steps = 0;
+        while (months != DateWindows.nextSmallerChunk(months)) {
+            months = DateWindows.nextSmallerChunk(months);
+            steps++;
+        }
+        return steps;
+    }
+
+    @Benchmark
+    public void deleteAdaptive(Blackhole bh) {
+        LocalDate from = first.withDayOfYear(1);
+        while (from.isBefore(endExclusive)) {
+            LocalDate to = DateWindows.min(from.plusYears(1), endExclusive);
+            bh.consume(DateWindows.deleteAdaptive(from, to, 12,
+                    this::stubDelete,
+                    e -> e instanceof RangeLimitExceeded,
+                    (next, e) -> bh.consume(next)));
+            from = to;
+        }
+    }
+
+    private int stubDelete(LocalDate fromInclusive, LocalDate toExclusive) {
+        if (DateWindows.monthsBetween(fromInclusive, toExclusive) > limitMonths) {
+            throw RangeLimitExceeded.INSTANCE;
+        }
+        return 1;
+    }
+
+    private static final class RangeLimitExceeded extends RuntimeException {
+
+        static final RangeLimitExceeded INSTANCE = new RangeLimitExceeded();
+
+        private RangeLimitExceeded() {
+            // Preallocated without a stack trace so the benchmark measures the window walk, not fillInStackTrace.
+            super("range delete requests are limited", null, false, false);
+        }
+    }
+}
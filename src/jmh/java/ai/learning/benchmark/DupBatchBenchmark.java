@@ -0,0 +1,104 @@
+package ai.learning.benchmark;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.nontrauma.migration.migrationutil.repository.DupDeleteBatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the dup-delete batches of one range window: the fixed-count builder loop the blocking
+ * range delete used (30 statements per batch) against {@link DupDeleteBatcher}, at several batch
+ * sizes. Statements are created up front so only
+ * batch assembly is measured; nothing is sent. Both variants set the consistency level once on
+ * the batch and use the same boxed partition key, so neither pays an allocation the other does not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class DupBatchBenchmark {
+
+    private static final String DELETE_DUP_BY_CLAIMNUMBER =
+            "DELETE FROM claim_duplicate_chk_svcthrudt WHERE payerkey = ? AND memberkey = ? AND claimnumber = ?";
+
+    private static final long PAYER_KEY = 1001L;
+
+    private static final long MEMBER_KEY = 123_456_789L;
+
+    // Boxed once, as ClaimsDeleteRepo does per window.
+    private static final Object PARTITION = MEMBER_KEY;
+
+    @Param({"500", "5000"})
+    public int claimNumbers;
+
+    @Param({"10", "30"})
+    public int batchSize;
+
+    private SimpleStatement[] deletes;
+
+    private int[] payloadBytes;
+
+    @Setup
+    public void setUp() {
+        deletes = new SimpleStatement[claimNumbers];
+        payloadBytes = new int[claimNumbers];
+        for (int i = 0; i < claimNumbers; i++) {
+            String claimNumber = String.format("CLM%012d", i);
+            deletes[i] = SimpleStatement.newInstance(DELETE_DUP_BY_CLAIMNUMBER, PAYER_KEY, MEMBER_KEY, claimNumber);
+            payloadBytes[i] = 2 * Long.BYTES + claimNumber.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    @Benchmark
+    public void fixedCount(Blackhole bh) {
+        BatchStatementBuilder batch = newBatch();
+        int added = 0;
+        for (SimpleStatement delete : deletes) {
+            batch.addStatement(delete);
+            added++;
+            if (added >= batchSize) {
+                bh.consume(batch.build());
+                batch = newBatch();
+                added = 0;
+            }
+        }
+        if (added > 0) {
+            bh.consume(batch.build());
+        }
+    }
+
+    @Benchmark
+    public void dupDeleteBatcher(Blackhole bh) {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(batchSize, 4096, ConsistencyLevel.LOCAL_QUORUM);
+        for (int i = 0; i < deletes.length; i++) {
+            BatchStatement full = batcher.add(PARTITION, deletes[i], payloadBytes[i]);
+            if (full != null) {
+                bh.consume(full);
+            }
+        }
+        bh.consume(batcher.flush());
+    }
+
+    private static BatchStatementBuilder newBatch() {
+        return BatchStatement.builder(DefaultBatchType.UNLOGGED).setConsistencyLevel(ConsistencyLevel.LOCAL_QUORUM);
+    }
+}
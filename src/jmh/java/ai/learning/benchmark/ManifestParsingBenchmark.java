@@ -0,0 +1,130 @@
+package ai.learning.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.nontrauma.migration.migrationutil.service.MemberKeyNdjsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member manifest parsing: the per-line DTO path of {@code ClaimDeleteService.dtoProcessor}
+ * against streaming alternatives. Each invocation parses one whole in-memory manifest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(3)
+public class ManifestParsingBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({"100000"})
+    public int members;
+
+    // Extra fields per line besides memberKey, which the parsers have to skip.
+    @Param({"1", "8"})
+    public int extraFields;
+
+    private byte[] manifest;
+
+    private ObjectMapper objectMapper;
+
+    private ObjectReader lineReader;
+
+    private MemberKeyNdjsonParser tokenParser;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder sb = new StringBuilder(members * (32 + extraFields * 24));
+        for (int i = 0; i < members; i++) {
+            sb.append("{\"payerKey\":1001,\"memberKey\":").append(random.nextLong(1L, 1_000_000_000_000L));
+            for (int f = 1; f < extraFields; f++) {
+                sb.append(",\"attr").append(f).append("\":\"").append(random.nextInt()).append('"');
+            }
+            sb.append("}\n");
+        }
+        manifest = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        lineReader = objectMapper.readerFor(MemberLine.class);
+        tokenParser = new MemberKeyNdjsonParser(objectMapper.getFactory());
+    }
+
+    /**
+     * Line-by-line String + DTO + boxed List, as {@code dtoProcessor} does.
+     */
+    @Benchmark
+    public void dtoPerLine(Blackhole bh) throws IOException {
+        List<Long> chunk = new ArrayList<>(CHUNK_SIZE);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                chunk.add(objectMapper.readValue(line, MemberLine.class).memberKey);
+                if (chunk.size() >= CHUNK_SIZE) {
+                    bh.consume(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        bh.consume(chunk);
+    }
+
+    /**
+     * Databind over the stream with a {@link MappingIterator}: no line Strings, still one DTO per line.
+     */
+    @Benchmark
+    public void mappingIterator(Blackhole bh) throws IOException {
+        long[] chunk = new long[CHUNK_SIZE];
+        int size = 0;
+        try (MappingIterator<MemberLine> it = lineReader.readValues(new ByteArrayInputStream(manifest))) {
+            while (it.hasNextValue()) {
+                chunk[size++] = it.nextValue().memberKey;
+                if (size == CHUNK_SIZE) {
+                    bh.consume(chunk);
+                    size = 0;
+                }
+            }
+        }
+        bh.consume(size);
+    }
+
+    /**
+     * Token-level parsing into reused {@code long[]} chunks ({@link MemberKeyNdjsonParser}).
+     */
+    @Benchmark
+    public long tokenParser(Blackhole bh) throws IOException {
+        return tokenParser.parse(new ByteArrayInputStream(manifest), CHUNK_SIZE,
+                (memberKeys, length) -> bh.consume(memberKeys));
+    }
+
+    public static class MemberLine {
+        public long memberKey;
+    }
+}
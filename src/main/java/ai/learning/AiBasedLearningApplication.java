@@ -2,12 +2,18 @@ package ai.learning;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 
 @SpringBootApplication
 public class AiBasedLearningApplication {
 
+	// Startup steps kept for the startup report and the actuator startup endpoint.
+	private static final int STARTUP_STEPS = 4096;
+
 	public static void main(String[] args) {
-		SpringApplication.run(AiBasedLearningApplication.class, args);
+		SpringApplication application = new SpringApplication(AiBasedLearningApplication.class);
+		application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		application.run(args);
 	}
 
 }
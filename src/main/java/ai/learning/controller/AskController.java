@@ -1,9 +1,23 @@
 package ai.learning.controller;
 
+import ai.learning.service.ChatModelScheduler;
+import ai.learning.service.ChatModelScheduler.Priority;
+import ai.learning.service.ChatOverloadedException;
+import ai.learning.service.ChatResponseCache;
 import org.springframework.ai.ollama.OllamaChatModel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
@@ -11,12 +25,69 @@ public class AskController {
 
     private OllamaChatModel chatModel;
 
-    public AskController(OllamaChatModel chatModel){
+    private ChatResponseCache responseCache;
+
+    private ChatModelScheduler scheduler;
+
+    public AskController(OllamaChatModel chatModel, ChatResponseCache responseCache, ChatModelScheduler scheduler){
         this.chatModel=chatModel;
+        this.responseCache=responseCache;
+        this.scheduler=scheduler;
     }
+
+    /**
+     * Cache misses queue for a model slot with the given priority; the servlet thread is released
+     * while the request waits and generates.
+     */
     @GetMapping("/ai/generate")
-    public String generate(@RequestParam(value = "message", defaultValue = "Tell me a joke") String message) {
-        `gbx`return  this.chatModel.call(message).toString();
-    }`
+    public CompletableFuture<String> generate(@RequestParam(value = "message", defaultValue = "Tell me a joke") String message,
+                                              @RequestParam(value = "priority", defaultValue = "interactive") String priority) {
+        Priority schedulingPriority = priority(priority);
+        return this.responseCache.get(message, schedulingPriority,
+                prompt -> this.scheduler.call(schedulingPriority, () -> this.chatModel.call(prompt)));
+    }
+
+    /**
+     * Streams the completion as Server-Sent Events while Ollama generates it: one {@code token}
+     * event per chunk, then a {@code done} event. Chunks are sent as JSON so leading spaces and
+     * newlines survive the SSE framing. When the client disconnects (or the async request times
+     * out) the subscription is cancelled, which aborts the generation upstream.
+     *
+     * A request refused right away gets 429 like {@link #generate}. One that runs out of queue time
+     * after the stream has started ends with an {@code error} event instead, whose message is the
+     * reason and whose {@code retry} field is the Retry-After time.
+     */
+    @GetMapping(value = "/ai/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Chunk>> generateStream(@RequestParam(value = "message", defaultValue = "Tell me a joke") String message,
+                                                       @RequestParam(value = "priority", defaultValue = "interactive") String priority) {
+        return this.scheduler.stream(priority(priority), () -> this.chatModel.stream(message))
+                .map(text -> ServerSentEvent.builder(new Chunk(text)).event("token").build())
+                .concatWithValues(ServerSentEvent.<Chunk>builder().event("done").build())
+                .onErrorResume(ChatOverloadedException.class, e -> Flux.just(ServerSentEvent.builder(new Chunk(e.getMessage()))
+                        .event("error")
+                        .retry(e.getRetryAfter())
+                        .build()));
+    }
+
+    /**
+     * Shed requests get 429 with the time the queue is expected to have room again.
+     */
+    @ExceptionHandler(ChatOverloadedException.class)
+    public ResponseEntity<String> overloaded(ChatOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(e.getMessage());
+    }
+
+    private static Priority priority(String value) {
+        try {
+            return Priority.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "priority must be interactive or batch");
+        }
+    }
+
+    public record Chunk(String text) {
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,112 @@
+package ai.learning.controller;
+
+import ai.learning.service.ClaimDeleteService;
+import com.nontrauma.migration.migrationutil.repository.AdaptiveRateLimiter;
+import com.nontrauma.migration.migrationutil.service.DeleteJob;
+import com.nontrauma.migration.migrationutil.service.DeleteJobRegistry;
+import com.nontrauma.migration.migrationutil.service.MemberDeleteExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Submits claim delete jobs and exposes their progress; running jobs can be cancelled or
+ * throttled by changing the payer's in-flight member limit.
+ */
+@RestController
+@RequestMapping("/claims-delete/jobs")
+public class ClaimDeleteJobController {
+
+    private final ClaimDeleteService claimDeleteService;
+
+    private final DeleteJobRegistry deleteJobRegistry;
+
+    private final MemberDeleteExecutor memberDeleteExecutor;
+
+    private final AdaptiveRateLimiter rateLimiter;
+
+    public ClaimDeleteJobController(ClaimDeleteService claimDeleteService,
+                                    DeleteJobRegistry deleteJobRegistry,
+                                    MemberDeleteExecutor memberDeleteExecutor,
+                                    AdaptiveRateLimiter rateLimiter) {
+        this.claimDeleteService = claimDeleteService;
+        this.deleteJobRegistry = deleteJobRegistry;
+        this.memberDeleteExecutor = memberDeleteExecutor;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public DeleteJob.Snapshot submit(@RequestBody SubmitRequest request) {
+        if (request.payerKey() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "payerKey is required");
+        }
+        boolean hasFiles = request.files() != null && !request.files().isEmpty();
+        boolean hasPrefix = request.prefix() != null && !request.prefix().isBlank();
+        if (hasFiles == hasPrefix) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Exactly one of files or prefix is required");
+        }
+        DeleteJob job = claimDeleteService.submit(request.payerKey(),
+                hasFiles ? request.files() : null,
+                hasPrefix ? request.prefix() : null);
+        return snapshot(job);
+    }
+
+    @GetMapping
+    public List<DeleteJob.Snapshot> list() {
+        return deleteJobRegistry.list().stream()
+                .map(this::snapshot)
+                .toList();
+    }
+
+    @GetMapping("/{id}")
+    public DeleteJob.Snapshot get(@PathVariable String id) {
+        return snapshot(find(id));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public DeleteJob.Snapshot cancel(@PathVariable String id) {
+        DeleteJob job = find(id);
+        job.cancel();
+        return snapshot(job);
+    }
+
+    /**
+     * Changes how many members of the job's payer are deleted concurrently. The limit is per payer,
+     * so it also applies to other jobs of the same payer.
+     */
+    @PutMapping("/{id}/concurrency")
+    public DeleteJob.Snapshot concurrency(@PathVariable String id, @RequestParam int maxInFlight) {
+        DeleteJob job = find(id);
+        if (maxInFlight < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxInFlight must be at least 1");
+        }
+        memberDeleteExecutor.setMaxInFlightPerPayer(job.payerKey(), maxInFlight);
+        return snapshot(job);
+    }
+
+    private DeleteJob find(String id) {
+        return deleteJobRegistry.find(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No delete job " + id));
+    }
+
+    private DeleteJob.Snapshot snapshot(DeleteJob job) {
+        return job.snapshot(rateLimiter.getPermitsPerSecond(),
+                memberDeleteExecutor.maxInFlightPerPayer(job.payerKey()));
+    }
+
+    public record SubmitRequest(Long payerKey, List<String> files, String prefix) {
+    }
+}
@@ -0,0 +1,77 @@
+package ai.learning.controller;
+
+import com.nontrauma.migration.migrationutil.service.DeletePlan;
+import com.nontrauma.migration.migrationutil.service.DeletePlanService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Dry-run planning of a payer's delete: reads its manifests and samples partitions without
+ * deleting anything, and returns the estimate (also written as a report file). The plan runs off
+ * the request thread; the response waits for it up to {@code ntclaims.delete.plan.request-timeout}.
+ */
+@RestController
+@RequestMapping("/claims-delete/plans")
+public class DeletePlanController {
+
+    private final DeletePlanService deletePlanService;
+
+    // Longer than the streaming timeout in spring.mvc.async: a large payer's plan takes minutes.
+    private final Duration requestTimeout;
+
+    public DeletePlanController(DeletePlanService deletePlanService,
+                                @Value("${ntclaims.delete.plan.request-timeout:PT30M}") Duration requestTimeout) {
+        this.deletePlanService = deletePlanService;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @PostMapping
+    public DeferredResult<DeletePlan> plan(@RequestBody PlanRequest request) {
+        if (request.payerKey() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "payerKey is required");
+        }
+        boolean hasFiles = request.files() != null && !request.files().isEmpty();
+        boolean hasPrefix = request.prefix() != null && !request.prefix().isBlank();
+        if (hasFiles == hasPrefix) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Exactly one of files or prefix is required");
+        }
+        if (request.sampleSize() != null && request.sampleSize() < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "sampleSize must be at least 1");
+        }
+        if (request.statementsPerSecond() != null && request.statementsPerSecond() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "statementsPerSecond must be positive");
+        }
+        DeferredResult<DeletePlan> result = new DeferredResult<>(requestTimeout.toMillis());
+        deletePlanService.plan(request.payerKey(),
+                        hasFiles ? request.files() : null,
+                        hasPrefix ? request.prefix() : null,
+                        request.sampleSize(), request.statementsPerSecond(), request.writeUnitsPerSecond())
+                .whenComplete((plan, error) -> {
+                    if (error == null) {
+                        result.setResult(plan);
+                    } else {
+                        result.setErrorResult(error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error);
+                    }
+                });
+        return result;
+    }
+
+    public record PlanRequest(Long payerKey,
+                              List<String> files,
+                              String prefix,
+                              Integer sampleSize,
+                              Double statementsPerSecond,
+                              Double writeUnitsPerSecond) {
+    }
+}
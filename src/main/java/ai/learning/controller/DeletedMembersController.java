@@ -0,0 +1,45 @@
+package ai.learning.controller;
+
+import com.nontrauma.migration.migrationutil.service.DeletedMemberIndex;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Inspects and resets the per-payer set of members already deleted, which delete jobs skip.
+ */
+@RestController
+@RequestMapping("/claims-delete/deleted-members")
+public class DeletedMembersController {
+
+    private final DeletedMemberIndex deletedMembers;
+
+    public DeletedMembersController(DeletedMemberIndex deletedMembers) {
+        this.deletedMembers = deletedMembers;
+    }
+
+    /**
+     * Counts the payer's deleted members without loading its set for later jobs.
+     */
+    @GetMapping("/{payerKey}")
+    public DeletedMembers get(@PathVariable long payerKey) {
+        return new DeletedMembers(payerKey, deletedMembers.size(payerKey));
+    }
+
+    /**
+     * Forgets the payer's deleted members, e.g. after its claims were loaded again, so the next
+     * job deletes every member in its manifests.
+     */
+    @DeleteMapping("/{payerKey}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void forget(@PathVariable long payerKey) {
+        deletedMembers.forget(payerKey);
+    }
+
+    public record DeletedMembers(long payerKey, long count) {
+    }
+}
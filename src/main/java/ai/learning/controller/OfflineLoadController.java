@@ -0,0 +1,61 @@
+package ai.learning.controller;
+
+import ai.learning.service.ClaimDeleteService;
+import com.nontrauma.migration.migrationutil.repository.InMemoryClaimsStore;
+import com.nontrauma.migration.migrationutil.service.DeleteJob;
+import com.nontrauma.migration.migrationutil.service.SyntheticLoadGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Offline throughput runs: generates a synthetic load into the in-process stores and submits a
+ * delete job for it. Progress is then read from {@code /claims-delete/jobs/{jobId}} and the metrics.
+ */
+@RestController
+@Profile("offline")
+@RequestMapping("/offline/load")
+public class OfflineLoadController {
+
+    private final SyntheticLoadGenerator loadGenerator;
+
+    private final ClaimDeleteService claimDeleteService;
+
+    private final InMemoryClaimsStore claimsStore;
+
+    public OfflineLoadController(SyntheticLoadGenerator loadGenerator,
+                                 ClaimDeleteService claimDeleteService,
+                                 InMemoryClaimsStore claimsStore) {
+        this.loadGenerator = loadGenerator;
+        this.claimDeleteService = claimDeleteService;
+        this.claimsStore = claimsStore;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public LoadRun run(@RequestParam(defaultValue = "1001") long payerKey,
+                       @RequestParam(defaultValue = "20") int files,
+                       @RequestParam(defaultValue = "5000") int membersPerFile,
+                       @RequestParam(defaultValue = "1.2") double zipfExponent,
+                       @RequestParam(defaultValue = "200000") int maxClaimsPerMember,
+                       @RequestParam(defaultValue = "40") int claimsPerMonth,
+                       @RequestParam(defaultValue = "42") long seed) {
+        SyntheticLoadGenerator.GeneratedLoad load = loadGenerator.generate(new SyntheticLoadGenerator.LoadSpec(
+                payerKey, files, membersPerFile, zipfExponent, maxClaimsPerMember, claimsPerMonth, seed));
+        DeleteJob job = claimDeleteService.submit(payerKey, null, load.prefix());
+        return new LoadRun(job.id(), load);
+    }
+
+    @GetMapping("/remaining-claims")
+    public long remainingClaims() {
+        return claimsStore.remainingClaims();
+    }
+
+    public record LoadRun(String jobId, SyntheticLoadGenerator.GeneratedLoad load) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-rate governor in front of every {@link ClaimsDeleteRepo} statement.
+ *
+ * Paces statements with a token bucket whose rate follows AIMD:
+ * - additive increase: +{@code additiveIncrease} statements/sec at most once per
+ *   {@code increaseInterval}, as long as latency stayed under target during that interval;
+ * - multiplicative decrease: rate * {@code decreaseFactor} on throttling, timeouts and
+ *   server errors, at most once per {@code decreaseCooldown} so one burst of failures from
+ *   the same overload only counts once.
+ *
+ * The current rate is exposed through {@link #getPermitsPerSecond()} so provisioned capacity
+ * can be tuned against it.
+ */
+@Component
+public class AdaptiveRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+
+    private static final CompletableFuture<Void> NO_WAIT = CompletableFuture.completedFuture(null);
+
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+    private final long latencyTargetNanos;
+    private final long increaseIntervalNanos;
+    private final long decreaseCooldownNanos;
+
+    // Guarded by this.
+    private double rate;
+    private long nextFreeNanos;
+    private long lastIncreaseNanos;
+    private long lastDecreaseNanos;
+    private boolean slowSinceLastIncrease;
+
+    @Autowired
+    public AdaptiveRateLimiter(@Value("${ntclaims.delete.rate.initial:200}") double initialRate,
+                               @Value("${ntclaims.delete.rate.min:10}") double minRate,
+                               @Value("${ntclaims.delete.rate.max:5000}") double maxRate,
+                               @Value("${ntclaims.delete.rate.additive-increase:20}") double additiveIncrease,
+                               @Value("${ntclaims.delete.rate.decrease-factor:0.7}") double decreaseFactor,
+                               @Value("${ntclaims.delete.rate.latency-target-ms:100}") long latencyTargetMs,
+                               @Value("${ntclaims.delete.rate.increase-interval-ms:1000}") long increaseIntervalMs,
+                               @Value("${ntclaims.delete.rate.decrease-cooldown-ms:500}") long decreaseCooldownMs) {
+        if (minRate <= 0 || minRate > maxRate) {
+            throw new IllegalArgumentException("Invalid rate bounds: min=" + minRate + ", max=" + maxRate);
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("decrease-factor must be in (0, 1): " + decreaseFactor);
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.additiveIncrease = additiveIncrease;
+        this.decreaseFactor = decreaseFactor;
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMs);
+        this.increaseIntervalNanos = TimeUnit.MILLISECONDS.toNanos(increaseIntervalMs);
+        this.decreaseCooldownNanos = TimeUnit.MILLISECONDS.toNanos(decreaseCooldownMs);
+        this.rate = clamp(initialRate);
+        long now = System.nanoTime();
+        this.nextFreeNanos = now;
+        this.lastIncreaseNanos = now;
+        this.lastDecreaseNanos = now - decreaseCooldownNanos;
+        log.info("AdaptiveRateLimiter initialized; rate={}/s, min={}/s, max={}/s", rate, minRate, maxRate);
+    }
+
+    /**
+     * Blocks the calling thread until the next statement may be sent.
+     */
+    public void acquire() {
+        long deadline = System.nanoTime() + reserve();
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #acquire()} for use inside async chains (driver I/O threads
+     * must never be parked). Completes when the next statement may be sent.
+     */
+    public CompletionStage<Void> acquireAsync() {
+        long waitNanos = reserve();
+        if (waitNanos <= 0) {
+            return NO_WAIT;
+        }
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        long now = System.nanoTime();
+        if (latencyNanos > latencyTargetNanos) {
+            slowSinceLastIncrease = true;
+        }
+        if (now - lastIncreaseNanos < increaseIntervalNanos) {
+            return;
+        }
+        if (!slowSinceLastIncrease && rate < maxRate) {
+            rate = clamp(rate + additiveIncrease);
+            log.debug("Write rate increased to {}/s", rate);
+        }
+        lastIncreaseNanos = now;
+        slowSinceLastIncrease = false;
+    }
+
+    public void onError(Throwable error) {
+        if (!DriverErrors.isCongestion(error)) {
+            return;
+        }
+        double previous;
+        double current;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - lastDecreaseNanos < decreaseCooldownNanos) {
+                return;
+            }
+            previous = rate;
+            rate = clamp(rate * decreaseFactor);
+            current = rate;
+            lastDecreaseNanos = now;
+            // Hold the new rate for a full interval before probing upwards again.
+            lastIncreaseNanos = now;
+            slowSinceLastIncrease = false;
+        }
+        log.warn("Keyspaces throttling/server error; write rate reduced from {}/s to {}/s. error={}",
+                Math.round(previous), Math.round(current), error.toString());
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return rate;
+    }
+
+    /**
+     * Reserves the next send slot and returns how long the caller must wait for it.
+     */
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long slot = Math.max(nextFreeNanos, now);
+        nextFreeNanos = slot + intervalNanos;
+        return slot - now;
+    }
+
+    private double clamp(double value) {
+        return Math.max(minRate, Math.min(maxRate, value));
+    }
+}
@@ -3,25 +3,49 @@ package com.nontrauma.migration.migrationutil.repository;
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.cql.*;
+import com.nontrauma.migration.migrationutil.repository.DeleteMetrics.StatementType;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Repository
-public class ClaimsDeleteRepo  {
+@Profile("!offline")
+public class ClaimsDeleteRepo implements ClaimsStore {
 
     private static final Logger log = LoggerFactory.getLogger(ClaimsDeleteRepo .class);
 
     private static final ConsistencyLevel CL = ConsistencyLevel.LOCAL_QUORUM;
 
-    private static final int DUP_DELETE_BATCH_SIZE = 30;
+    // Planning reads only estimate sizes; LOCAL_ONE costs half the read capacity.
+    private static final ConsistencyLevel PROFILE_CL = ConsistencyLevel.LOCAL_ONE;
+
+    // Key columns (payerkey, memberkey) bound in every dup delete.
+    private static final int DUP_KEY_BYTES = 2 * Long.BYTES;
+
+    private static final CompletableFuture<Void> NOTHING_PENDING = CompletableFuture.completedFuture(null);
 
     private static final String DELETE_CLAIM_PARTITION =
             "DELETE FROM claims WHERE payerkey = ? AND memberkey = ?";
@@ -38,8 +62,30 @@ public class ClaimsDeleteRepo  {
     private static final String DELETE_DUP_BY_CLAIMNUMBER =
             "DELETE FROM claim_duplicate_chk_svcthrudt WHERE payerkey = ? AND memberkey = ? AND claimnumber = ?";
 
+    private static final String SELECT_FIRST_SERVICE_DATE =
+            "SELECT servicebegindate FROM claims WHERE payerkey = ? AND memberkey = ? ORDER BY servicebegindate ASC LIMIT 1";
+
+    private static final String SELECT_LAST_SERVICE_DATE =
+            "SELECT servicebegindate FROM claims WHERE payerkey = ? AND memberkey = ? ORDER BY servicebegindate DESC LIMIT 1";
+
+    private static final String SELECT_CLAIMS_PROFILE =
+            "SELECT servicebegindate, claimnumber FROM claims WHERE payerkey = ? AND memberkey = ?";
+
+    private static final String SELECT_DUP_PROFILE =
+            "SELECT claimnumber FROM claim_duplicate_chk_svcthrudt WHERE payerkey = ? AND memberkey = ?";
+
     private final ClusterReference clusterReference;
 
+    private final AdaptiveRateLimiter rateLimiter;
+
+    private final DeleteMetrics deleteMetrics;
+
+    private final int rangeSelectPageSize;
+    private final int dupBatchMaxStatements;
+    private final int dupBatchMaxBytes;
+    // Claim numbers whose dup deletes are sent per group, two groups in flight.
+    private final int dupGroupSize;
+
     private CqlSession cqlSession;
 
     private PreparedStatement psDeleteClaimPartition;
@@ -49,106 +95,330 @@ public class ClaimsDeleteRepo  {
     private PreparedStatement psSelectClaimNumbersByServiceDateRange;
     private PreparedStatement psDeleteDupByClaimNumber;
 
+    private PreparedStatement psSelectFirstServiceDate;
+    private PreparedStatement psSelectLastServiceDate;
+
+    private PreparedStatement psSelectClaimsProfile;
+    private PreparedStatement psSelectDupProfile;
+
     @Autowired
-    public ClaimsDeleteRepo (final ClusterReference clusterReference) {
+    public ClaimsDeleteRepo (final ClusterReference clusterReference,
+                             final AdaptiveRateLimiter rateLimiter,
+                             final DeleteMetrics deleteMetrics,
+                             @Value("${ntclaims.delete.range.page-size:500}") final int rangeSelectPageSize,
+                             @Value("${ntclaims.delete.dup-batch.max-statements:30}") final int dupBatchMaxStatements,
+                             @Value("${ntclaims.delete.dup-batch.max-bytes:4096}") final int dupBatchMaxBytes,
+                             @Value("${ntclaims.delete.dup-batch.group-size:500}") final int dupGroupSize) {
         this.clusterReference = clusterReference;
+        this.rateLimiter = rateLimiter;
+        this.deleteMetrics = deleteMetrics;
+        this.rangeSelectPageSize = rangeSelectPageSize;
+        this.dupBatchMaxStatements = dupBatchMaxStatements;
+        this.dupBatchMaxBytes = dupBatchMaxBytes;
+        this.dupGroupSize = dupGroupSize;
     }
 
+    /**
+     * Prepares every statement at once with {@code prepareAsync}, so startup waits for one round
+     * trip instead of one per statement.
+     */
     @PostConstruct
     public void init() {
+        long start = System.nanoTime();
         try {
             this.cqlSession = Objects.requireNonNull(
                     clusterReference.getSession(),
                     "ClusterReference.getSession() returned null (CqlSession not initialized)"
             );
 
-            this.psDeleteClaimPartition = prepareOrThrow(DELETE_CLAIM_PARTITION);
-            this.psDeleteDupPartition = prepareOrThrow(DELETE_DUP_PARTITION);
+            CompletableFuture<PreparedStatement> deleteClaimPartition = prepareAsync(DELETE_CLAIM_PARTITION);
+            CompletableFuture<PreparedStatement> deleteDupPartition = prepareAsync(DELETE_DUP_PARTITION);
+            CompletableFuture<PreparedStatement> deleteClaimsByServiceDateRange = prepareAsync(DELETE_CLAIMS_BY_SERVICE_DATE_RANGE);
+            CompletableFuture<PreparedStatement> selectClaimNumbersByServiceDateRange = prepareAsync(SELECT_CLAIMNUMBERS_BY_SERVICE_DATE_RANGE);
+            CompletableFuture<PreparedStatement> deleteDupByClaimNumber = prepareAsync(DELETE_DUP_BY_CLAIMNUMBER);
+            CompletableFuture<PreparedStatement> selectFirstServiceDate = prepareAsync(SELECT_FIRST_SERVICE_DATE);
+            CompletableFuture<PreparedStatement> selectLastServiceDate = prepareAsync(SELECT_LAST_SERVICE_DATE);
+            CompletableFuture<PreparedStatement> selectClaimsProfile = prepareAsync(SELECT_CLAIMS_PROFILE);
+            CompletableFuture<PreparedStatement> selectDupProfile = prepareAsync(SELECT_DUP_PROFILE);
+
+            this.psDeleteClaimPartition = awaitPrepared(deleteClaimPartition);
+            this.psDeleteDupPartition = awaitPrepared(deleteDupPartition);
 
-            this.psDeleteClaimsByServiceDateRange = prepareOrThrow(DELETE_CLAIMS_BY_SERVICE_DATE_RANGE);
-            this.psSelectClaimNumbersByServiceDateRange = prepareOrThrow(SELECT_CLAIMNUMBERS_BY_SERVICE_DATE_RANGE);
-            this.psDeleteDupByClaimNumber = prepareOrThrow(DELETE_DUP_BY_CLAIMNUMBER);
+            this.psDeleteClaimsByServiceDateRange = awaitPrepared(deleteClaimsByServiceDateRange);
+            this.psSelectClaimNumbersByServiceDateRange = awaitPrepared(selectClaimNumbersByServiceDateRange);
+            this.psDeleteDupByClaimNumber = awaitPrepared(deleteDupByClaimNumber);
 
-            log.info("NTClaimDeleteRepo init completed");
+            this.psSelectFirstServiceDate = awaitPrepared(selectFirstServiceDate);
+            this.psSelectLastServiceDate = awaitPrepared(selectLastServiceDate);
+
+            this.psSelectClaimsProfile = awaitPrepared(selectClaimsProfile);
+            this.psSelectDupProfile = awaitPrepared(selectDupProfile);
+
+            log.info("NTClaimDeleteRepo init completed in {} ms", (System.nanoTime() - start) / 1_000_000);
         } catch (Exception e) {
             log.error("NTClaimDeleteRepo init failed: {}", e.getMessage(), e);
             throw e;
         }
     }
-    private PreparedStatement prepareOrThrow(String cql) {
-        PreparedStatement ps = cqlSession.prepare(cql);
-        if (ps == null) {
-            String errMsg = "Failed to prepare CQL statement: " + cql;
-            log.error(errMsg);
-            throw new IllegalStateException(errMsg);
+
+    private CompletableFuture<PreparedStatement> prepareAsync(String cql) {
+        return cqlSession.prepareAsync(cql)
+                .toCompletableFuture()
+                .thenApply(ps -> {
+                    if (ps == null) {
+                        String errMsg = "Failed to prepare CQL statement: " + cql;
+                        log.error(errMsg);
+                        throw new IllegalStateException(errMsg);
+                    }
+                    return ps;
+                });
+    }
+
+    // Surfaces the driver or IllegalStateException of a failed prepare as thrown by the blocking prepare.
+    private static PreparedStatement awaitPrepared(CompletableFuture<PreparedStatement> prepared) {
+        try {
+            return prepared.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * All statements go through the rate limiter, which also learns from their latency and errors,
+     * and are timed per statement type.
+     */
+    private ResultSet execute(StatementType type, Statement<?> statement) {
+        rateLimiter.acquire();
+        deleteMetrics.statementStarted();
+        long start = System.nanoTime();
+        try {
+            ResultSet rs = cqlSession.execute(statement);
+            long latency = System.nanoTime() - start;
+            rateLimiter.onSuccess(latency);
+            deleteMetrics.statementFinished(type, latency, true);
+            return rs;
+        } catch (RuntimeException e) {
+            rateLimiter.onError(e);
+            deleteMetrics.statementFinished(type, System.nanoTime() - start, false);
+            throw e;
         }
-        return ps;
     }
 
-    public void deleteClaimsByPayerAndMember(Long payerKey, Long memberKey) {
-        // Delete claims partition.
-        cqlSession.execute(
-                psDeleteClaimPartition.bind(payerKey, memberKey)
-                        .setConsistencyLevel(CL)
-        );
+    private CompletionStage<AsyncResultSet> executeAsync(StatementType type, Statement<?> statement) {
+        return throttled(type, () -> cqlSession.executeAsync(statement));
+    }
+
+    /**
+     * Runs one request (a statement or the fetch of a further page) under the same rate limiting and
+     * metrics as {@link #execute}.
+     */
+    private CompletionStage<AsyncResultSet> throttled(StatementType type, Supplier<CompletionStage<AsyncResultSet>> request) {
+        return rateLimiter.acquireAsync().thenCompose(ready -> {
+            deleteMetrics.statementStarted();
+            long start = System.nanoTime();
+            return request.get().whenComplete((rs, error) -> {
+                long latency = System.nanoTime() - start;
+                if (error == null) {
+                    rateLimiter.onSuccess(latency);
+                } else {
+                    rateLimiter.onError(error);
+                }
+                deleteMetrics.statementFinished(type, latency, error == null);
+            });
+        });
+    }
+
+    /**
+     * Deletes the claims partition, then the dup partition once the claims delete has been
+     * acknowledged. Keys are bound as primitives (no boxing).
+     */
+    @Override
+    public CompletionStage<Void> deleteClaimsByPayerAndMemberAsync(long payerKey, long memberKey) {
+        return executeAsync(StatementType.CLAIMS_PARTITION, bindPartitionKey(psDeleteClaimPartition, payerKey, memberKey))
+                .thenCompose(claimsRs -> executeAsync(StatementType.DUP_PARTITION, bindPartitionKey(psDeleteDupPartition, payerKey, memberKey)))
+                .thenApply(dupRs -> null);
+    }
 
-        // Delete dup partition.
-        cqlSession.execute(
-                psDeleteDupPartition.bind(payerKey, memberKey)
-                        .setConsistencyLevel(CL)
-        );
+    private static BoundStatement bindPartitionKey(PreparedStatement ps, long payerKey, long memberKey) {
+        return ps.boundStatementBuilder()
+                .setLong(0, payerKey)
+                .setLong(1, memberKey)
+                .setConsistencyLevel(CL)
+                .build();
+    }
 
+    /**
+     * Reads the first and last servicebegindate of the member's claims partition (two single-row
+     * clustering-order reads), or empty if the partition has no claims.
+     */
+    @Override
+    public Optional<ServiceDateSpan> findServiceDateSpan(long payerKey, long memberKey) {
+        Row first = execute(StatementType.SPAN_PROBE,
+                bindPartitionKey(psSelectFirstServiceDate, payerKey, memberKey)).one();
+        if (first == null) {
+            return Optional.empty();
+        }
+        Row last = execute(StatementType.SPAN_PROBE,
+                bindPartitionKey(psSelectLastServiceDate, payerKey, memberKey)).one();
+        LocalDate firstDate = first.getLocalDate("servicebegindate");
+        LocalDate lastDate = (last == null) ? firstDate : last.getLocalDate("servicebegindate");
+        return Optional.of(new ServiceDateSpan(firstDate, lastDate));
     }
 
-    public void deleteClaimsByPayerMemberAndServiceDateRange(Long payerKey,
-                                                            Long memberKey,
-                                                            LocalDate fromInclusive,
-                                                            LocalDate toExclusive) {
+    /**
+     * Deletes the window's claims, then the dup rows of their claim numbers.
+     *
+     * The claim-number SELECT is paged asynchronously and the window's distinct claim numbers are
+     * collected while the pages come in. Claims are deleted first and dup rows only once the range
+     * DELETE has been accepted: a window refused for size ("range delete requests are limited")
+     * leaves its dup rows untouched for the smaller windows the caller retries with. So no dup
+     * delete can overlap the paging, and the window's claim numbers are held until the range
+     * DELETE returns; the window is bounded by the range-delete row limit, which bounds the set.
+     * Dup deletes then go out in groups of {@code dup-batch.group-size} claim numbers with at most
+     * two groups in flight, in batches sized by payload and partition ({@link DupDeleteBatcher}).
+     *
+     * @return number of distinct claim numbers whose dup rows were deleted
+     */
+    @Override
+    public CompletionStage<Integer> deleteClaimsByPayerMemberAndServiceDateRangeAsync(long payerKey,
+                                                                                      long memberKey,
+                                                                                      LocalDate fromInclusive,
+                                                                                      LocalDate toExclusive) {
+        BoundStatement selectBs = bindRange(psSelectClaimNumbersByServiceDateRange, payerKey, memberKey, fromInclusive, toExclusive)
+                .setPageSize(rangeSelectPageSize)
+                .build();
 
         Set<String> claimNumbers = new HashSet<>();
 
-        BoundStatement selectBs = psSelectClaimNumbersByServiceDateRange
-                .bind(payerKey, memberKey, fromInclusive, toExclusive)
+        return executeAsync(StatementType.RANGE_SELECT, selectBs)
+                .thenCompose(firstPage -> readPages(StatementType.RANGE_SELECT, firstPage, row -> {
+                    String claimNumber = row.getString("claimnumber");
+                    if (claimNumber != null && !claimNumber.isBlank()) {
+                        claimNumbers.add(claimNumber);
+                    }
+                }))
+                // Delete claims first.
+                .thenCompose(scanned -> executeAsync(StatementType.RANGE_DELETE,
+                        bindRange(psDeleteClaimsByServiceDateRange, payerKey, memberKey, fromInclusive, toExclusive).build()))
+                // Then delete dup rows.
+                .thenCompose(claimsRs -> deleteDups(payerKey, memberKey, claimNumbers))
+                .thenApply(dupsDeleted -> {
+                    log.debug("Deleted claims range and dup rows; payerkey={}, memberkey={}, from={}, to={}, claimNumbers={}",
+                            payerKey, memberKey, fromInclusive, toExclusive, claimNumbers.size());
+                    return claimNumbers.size();
+                });
+    }
+
+    private static BoundStatementBuilder bindRange(PreparedStatement ps, long payerKey, long memberKey,
+                                                   LocalDate fromInclusive, LocalDate toExclusive) {
+        return ps.boundStatementBuilder()
+                .setLong(0, payerKey)
+                .setLong(1, memberKey)
+                .setLocalDate(2, fromInclusive)
+                .setLocalDate(3, toExclusive)
                 .setConsistencyLevel(CL);
+    }
 
-        ResultSet rs = cqlSession.execute(selectBs);
-        for (Row row : rs) {
-            String claimNumber = row.getString("claimnumber");
-            if (claimNumber != null && !claimNumber.isBlank()) {
-                claimNumbers.add(claimNumber);
+    private CompletionStage<Void> deleteDups(long payerKey, long memberKey, Set<String> claimNumbers) {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(dupBatchMaxStatements, dupBatchMaxBytes, CL);
+        // Every dup row of the window is in the member's partition; box its key once.
+        Object partition = memberKey;
+        return deleteDupsGroupByGroup(claimNumbers.iterator(), payerKey, memberKey, partition, batcher, NOTHING_PENDING);
+    }
+
+    private CompletionStage<Void> deleteDupsGroupByGroup(Iterator<String> claimNumbers,
+                                                         long payerKey,
+                                                         long memberKey,
+                                                         Object partition,
+                                                         DupDeleteBatcher batcher,
+                                                         CompletableFuture<Void> previousGroupDeletes) {
+        List<CompletableFuture<AsyncResultSet>> groupDeletes = new ArrayList<>();
+
+        for (int i = 0; i < dupGroupSize && claimNumbers.hasNext(); i++) {
+            String claimNumber = claimNumbers.next();
+            BoundStatement delDup = psDeleteDupByClaimNumber.boundStatementBuilder()
+                    .setLong(0, payerKey)
+                    .setLong(1, memberKey)
+                    .setString(2, claimNumber)
+                    .build();
+            int payloadBytes = DUP_KEY_BYTES + claimNumber.getBytes(StandardCharsets.UTF_8).length;
+            BatchStatement full = batcher.add(partition, delDup, payloadBytes);
+            if (full != null) {
+                groupDeletes.add(executeAsync(StatementType.DUP_BATCH, full).toCompletableFuture());
             }
         }
 
-        // Delete claims first.
-        cqlSession.execute(
-                psDeleteClaimsByServiceDateRange.bind(payerKey, memberKey, fromInclusive, toExclusive)
-                        .setConsistencyLevel(CL)
-        );
+        if (!claimNumbers.hasNext()) {
+            BatchStatement rest = batcher.flush();
+            if (rest != null) {
+                groupDeletes.add(executeAsync(StatementType.DUP_BATCH, rest).toCompletableFuture());
+            }
+            return CompletableFuture.allOf(groupDeletes.toArray(CompletableFuture[]::new))
+                    .thenCombine(previousGroupDeletes, (current, previous) -> null);
+        }
 
-        // Then delete dup rows (unlogged batches to reduce round trips).
-        BatchStatementBuilder batch = BatchStatement.builder(DefaultBatchType.UNLOGGED);
-        int added = 0;
+        CompletableFuture<Void> thisGroupDeletes = CompletableFuture.allOf(groupDeletes.toArray(CompletableFuture[]::new));
+        // Send group N+1 once group N-1's deletes are done.
+        return previousGroupDeletes.thenCompose(previous -> deleteDupsGroupByGroup(
+                claimNumbers, payerKey, memberKey, partition, batcher, thisGroupDeletes));
+    }
 
-        for (String claimNumber : claimNumbers) {
-            BoundStatement delDup = psDeleteDupByClaimNumber
-                    .bind(payerKey, memberKey, claimNumber)
-                    .setConsistencyLevel(CL);
+    /**
+     * Pages through the member's claims partition (counting rows per servicebegindate month and
+     * distinct claim numbers) and its dup partition, both at the same time.
+     */
+    @Override
+    public CompletionStage<PartitionProfile> profilePartitionAsync(long payerKey, long memberKey) {
+        NavigableMap<YearMonth, Integer> claimRowsPerMonth = new TreeMap<>();
+        Set<String> claimNumbers = new HashSet<>();
+        AtomicLong claimRows = new AtomicLong();
+        AtomicLong dupRows = new AtomicLong();
+
+        CompletionStage<Void> claims = executeAsync(StatementType.PROFILE_CLAIMS,
+                bindProfile(psSelectClaimsProfile, payerKey, memberKey))
+                .thenCompose(firstPage -> readPages(StatementType.PROFILE_CLAIMS, firstPage, row -> {
+                    claimRows.incrementAndGet();
+                    LocalDate serviceDate = row.getLocalDate("servicebegindate");
+                    if (serviceDate != null) {
+                        claimRowsPerMonth.merge(YearMonth.from(serviceDate), 1, Integer::sum);
+                    }
+                    String claimNumber = row.getString("claimnumber");
+                    if (claimNumber != null && !claimNumber.isBlank()) {
+                        claimNumbers.add(claimNumber);
+                    }
+                }));
+        CompletionStage<Void> dups = executeAsync(StatementType.PROFILE_DUP,
+                bindProfile(psSelectDupProfile, payerKey, memberKey))
+                .thenCompose(firstPage -> readPages(StatementType.PROFILE_DUP, firstPage, row -> dupRows.incrementAndGet()));
+
+        // Each partition's pages are read one after another, so the collections are never shared.
+        return claims.thenCombine(dups, (c, d) -> new PartitionProfile(
+                claimRows.get(), claimNumbers.size(), dupRows.get(), claimRowsPerMonth));
+    }
 
-            batch.addStatement(delDup);
-            added++;
+    private BoundStatement bindProfile(PreparedStatement ps, long payerKey, long memberKey) {
+        return ps.boundStatementBuilder()
+                .setLong(0, payerKey)
+                .setLong(1, memberKey)
+                .setConsistencyLevel(PROFILE_CL)
+                .setPageSize(rangeSelectPageSize)
+                .build();
+    }
 
-            if (added >= DUP_DELETE_BATCH_SIZE) {
-                cqlSession.execute(batch.build());
-                batch = BatchStatement.builder(DefaultBatchType.UNLOGGED);
-                added = 0;
-            }
+    /**
+     * Hands every row to {@code onRow}, fetching the further pages one at a time; each fetch is a
+     * request of its own and goes through the rate limiter, timed as {@code type}.
+     */
+    private CompletionStage<Void> readPages(StatementType type, AsyncResultSet page, Consumer<Row> onRow) {
+        for (Row row : page.currentPage()) {
+            onRow.accept(row);
         }
-
-        if (added > 0) {
-            cqlSession.execute(batch.build());
+        if (!page.hasMorePages()) {
+            return NOTHING_PENDING;
         }
-
-        log.info("Deleted claims range and dup rows by claimnumber; payerkey={}, memberkey={}, claimNumbers={}",
-                payerKey, memberKey, claimNumbers.size());
+        return throttled(type, page::fetchNextPage).thenCompose(nextPage -> readPages(type, nextPage, onRow));
     }
 }
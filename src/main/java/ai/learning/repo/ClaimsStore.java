@@ -0,0 +1,42 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Claim storage operations used by the member delete path.
+ *
+ * {@link ClaimsDeleteRepo} is the Keyspaces implementation; {@link InMemoryClaimsStore} stands in
+ * for it under the {@code offline} profile. Implementations report an oversized range delete as an
+ * {@code InvalidQueryException} whose message contains "range delete requests are limited", and
+ * throttling as a driver congestion error, the way Keyspaces does.
+ */
+public interface ClaimsStore {
+
+    /**
+     * Deletes the member's claims partition, then its dup partition.
+     */
+    CompletionStage<Void> deleteClaimsByPayerAndMemberAsync(long payerKey, long memberKey);
+
+    /**
+     * First and last servicebegindate of the member's claims, or empty if it has none.
+     */
+    Optional<ServiceDateSpan> findServiceDateSpan(long payerKey, long memberKey);
+
+    /**
+     * Deletes the dup rows and claims of the member in {@code [fromInclusive, toExclusive)}.
+     *
+     * @return number of distinct claim numbers whose dup rows were deleted
+     */
+    CompletionStage<Integer> deleteClaimsByPayerMemberAndServiceDateRangeAsync(long payerKey,
+                                                                               long memberKey,
+                                                                               LocalDate fromInclusive,
+                                                                               LocalDate toExclusive);
+
+    /**
+     * Reads the member's claims and dup partitions without changing them, to size its delete
+     * ahead of a run.
+     */
+    CompletionStage<PartitionProfile> profilePartitionAsync(long payerKey, long memberKey);
+}
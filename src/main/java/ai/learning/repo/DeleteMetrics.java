@@ -0,0 +1,243 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer instrumentation of the claim delete path, exposed through Actuator/Prometheus.
+ *
+ * Meters:
+ * - {@code claims.delete.statement} timer (histogram) per CQL statement type and outcome;
+ * - {@code claims.delete.members} counter per path (fast partition delete / range fallback / failed);
+ * - {@code claims.delete.chunk.months} and {@code claims.delete.window.dup.rows} summaries;
+ * - {@code claims.delete.manifest.parse} timer and {@code claims.delete.s3.bytes} counter;
+ * - in-flight CQL statements, open S3 downloads and the current rate limit as gauges.
+ *
+ * Per-member logs are at debug level; instead a progress line with the totals since the previous
+ * one is logged every {@code log-interval-ms} while deletes are running.
+ */
+@Component
+public class DeleteMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(DeleteMetrics.class);
+
+    public enum StatementType {
+        CLAIMS_PARTITION, DUP_PARTITION, SPAN_PROBE, RANGE_SELECT, RANGE_DELETE, DUP_BATCH, PROFILE_CLAIMS, PROFILE_DUP;
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<StatementType, Timer> statementSuccess = new EnumMap<>(StatementType.class);
+    private final Map<StatementType, Timer> statementError = new EnumMap<>(StatementType.class);
+
+    private final Counter fastPathMembers;
+    private final Counter fallbackMembers;
+    private final Counter failedMembers;
+    private final Counter deduplicatedMembers;
+    private final DistributionSummary chunkMonths;
+    private final DistributionSummary windowDupRows;
+    private final Timer manifestParse;
+    private final Counter manifestMembers;
+    private final Counter s3Bytes;
+
+    private final AtomicInteger statementsInFlight = new AtomicInteger();
+    private final AtomicInteger downloadsInFlight = new AtomicInteger();
+
+    private final ScheduledExecutorService progressLogger;
+
+    // Totals at the previous progress line; only touched by the progress logger thread.
+    private double loggedFastPath;
+    private double loggedFallback;
+    private double loggedFailed;
+
+    @Autowired
+    public DeleteMetrics(MeterRegistry registry,
+                         AdaptiveRateLimiter rateLimiter,
+                         @Value("${ntclaims.delete.metrics.log-interval-ms:30000}") long logIntervalMs) {
+        for (StatementType type : StatementType.values()) {
+            statementSuccess.put(type, statementTimer(registry, type, "success"));
+            statementError.put(type, statementTimer(registry, type, "error"));
+        }
+        this.fastPathMembers = memberCounter(registry, "fast_path");
+        this.fallbackMembers = memberCounter(registry, "range_fallback");
+        this.failedMembers = memberCounter(registry, "failed");
+        this.deduplicatedMembers = memberCounter(registry, "deduplicated");
+        this.chunkMonths = DistributionSummary.builder("claims.delete.chunk.months")
+                .description("Chunk size, in months, that a range-fallback window was deleted with")
+                .serviceLevelObjectives(1, 3, 6, 12)
+                .register(registry);
+        this.windowDupRows = DistributionSummary.builder("claims.delete.window.dup.rows")
+                .description("Dup rows deleted per range-fallback window")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.manifestParse = Timer.builder("claims.delete.manifest.parse")
+                .description("Time spent parsing a manifest, excluding the deletes it feeds")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.manifestMembers = Counter.builder("claims.delete.manifest.members")
+                .description("Member keys read from manifests")
+                .register(registry);
+        this.s3Bytes = Counter.builder("claims.delete.s3.bytes")
+                .description("Manifest bytes downloaded from S3")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("claims.delete.statements.in.flight", statementsInFlight, AtomicInteger::get)
+                .description("CQL statements sent and not yet completed")
+                .register(registry);
+        Gauge.builder("claims.delete.s3.downloads.in.flight", downloadsInFlight, AtomicInteger::get)
+                .description("Manifest downloads opened and not yet fully read")
+                .register(registry);
+        Gauge.builder("claims.delete.rate.limit", rateLimiter, AdaptiveRateLimiter::getPermitsPerSecond)
+                .description("Current statement rate limit")
+                .baseUnit("statements/s")
+                .register(registry);
+
+        this.progressLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "claims-delete-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        this.progressLogger.scheduleAtFixedRate(this::logProgress, logIntervalMs, logIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static Timer statementTimer(MeterRegistry registry, StatementType type, String outcome) {
+        return Timer.builder("claims.delete.statement")
+                .description("Latency of claim delete CQL statements")
+                .tag("type", type.tag())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter memberCounter(MeterRegistry registry, String path) {
+        return Counter.builder("claims.delete.members")
+                .description("Members processed, by delete path")
+                .tag("path", path)
+                .register(registry);
+    }
+
+    // --- CQL statements
+
+    public void statementStarted() {
+        statementsInFlight.incrementAndGet();
+    }
+
+    public void statementFinished(StatementType type, long latencyNanos, boolean success) {
+        statementsInFlight.decrementAndGet();
+        (success ? statementSuccess : statementError).get(type).record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // --- members and windows
+
+    public void fastPathMember() {
+        fastPathMembers.increment();
+    }
+
+    public void fallbackMember() {
+        fallbackMembers.increment();
+    }
+
+    public void failedMember() {
+        failedMembers.increment();
+    }
+
+    public void deduplicatedMember() {
+        deduplicatedMembers.increment();
+    }
+
+    public void windowDeleted(int monthsPerChunk, long dupRows) {
+        chunkMonths.record(monthsPerChunk);
+        windowDupRows.record(dupRows);
+    }
+
+    // --- manifests
+
+    public void manifestParsed(long parseNanos, long members) {
+        manifestParse.record(parseNanos, TimeUnit.NANOSECONDS);
+        manifestMembers.increment(members);
+    }
+
+    public void s3BytesRead(long bytes) {
+        s3Bytes.increment(bytes);
+    }
+
+    /**
+     * Wraps a manifest download so the bytes read are counted, and the download is counted as in
+     * flight until the stream is closed.
+     */
+    public InputStream countingDownload(InputStream in) {
+        downloadsInFlight.incrementAndGet();
+        return new FilterInputStream(in) {
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    s3Bytes.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    s3Bytes.increment(n);
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    downloadsInFlight.decrementAndGet();
+                }
+                super.close();
+            }
+        };
+    }
+
+    private void logProgress() {
+        double fastPath = fastPathMembers.count();
+        double fallback = fallbackMembers.count();
+        double failed = failedMembers.count();
+        if (fastPath == loggedFastPath && fallback == loggedFallback && failed == loggedFailed) {
+            return;
+        }
+        log.info("Claims delete progress: fastPath=+{}, rangeFallback=+{}, failed=+{}, statementsInFlight={}, downloadsInFlight={}",
+                (long) (fastPath - loggedFastPath), (long) (fallback - loggedFallback), (long) (failed - loggedFailed),
+                statementsInFlight.get(), downloadsInFlight.get());
+        loggedFastPath = fastPath;
+        loggedFallback = fallback;
+        loggedFailed = failed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        progressLogger.shutdown();
+    }
+}
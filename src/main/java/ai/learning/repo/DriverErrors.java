@@ -0,0 +1,62 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.connection.BusyConnectionException;
+import com.datastax.oss.driver.api.core.connection.ClosedConnectionException;
+import com.datastax.oss.driver.api.core.connection.HeartbeatException;
+import com.datastax.oss.driver.api.core.servererrors.OverloadedException;
+import com.datastax.oss.driver.api.core.servererrors.ReadTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.ServerError;
+import com.datastax.oss.driver.api.core.servererrors.UnavailableException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Classification of driver errors returned by Amazon Keyspaces.
+ *
+ * Keyspaces reports exceeded table capacity as write/read timeouts or as a generic
+ * {@code ServerError: Internal Server Error}, not as a dedicated throttling error.
+ */
+public final class DriverErrors {
+
+    private DriverErrors() {
+    }
+
+    /**
+     * True for errors that mean the table (or the client) is overloaded and the request can be retried.
+     */
+    public static boolean isCongestion(Throwable t) {
+        Throwable cause = unwrap(t);
+        return cause instanceof WriteTimeoutException
+                || cause instanceof ReadTimeoutException
+                || cause instanceof ServerError
+                || cause instanceof OverloadedException
+                || cause instanceof UnavailableException
+                || cause instanceof DriverTimeoutException;
+    }
+
+    /**
+     * True for errors that are worth retrying as-is: congestion plus transient connection failures.
+     * Query errors such as {@code InvalidQueryException} are never retryable.
+     */
+    public static boolean isRetryable(Throwable t) {
+        Throwable cause = unwrap(t);
+        return isCongestion(cause)
+                || cause instanceof AllNodesFailedException
+                || cause instanceof BusyConnectionException
+                || cause instanceof ClosedConnectionException
+                || cause instanceof HeartbeatException;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
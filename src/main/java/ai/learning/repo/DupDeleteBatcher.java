@@ -0,0 +1,78 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+
+import java.util.Objects;
+
+/**
+ * Groups dup-row deletes into single-partition UNLOGGED batches.
+ *
+ * A batch is closed when adding the next statement would exceed either the statement cap
+ * (Keyspaces allows at most 30 statements per batch) or the payload budget, or when the next
+ * statement targets a different partition. Not thread-safe; use one instance per scan.
+ */
+public class DupDeleteBatcher {
+
+    // Rough per-statement framing cost (statement id, value count, value lengths).
+    static final int STATEMENT_OVERHEAD_BYTES = 16;
+
+    private final int maxStatements;
+    private final int maxBytes;
+    private final ConsistencyLevel consistencyLevel;
+
+    private BatchStatementBuilder current;
+    private Object currentPartition;
+    private int statements;
+    private int bytes;
+
+    public DupDeleteBatcher(int maxStatements, int maxBytes, ConsistencyLevel consistencyLevel) {
+        if (maxStatements < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("maxStatements and maxBytes must be positive");
+        }
+        this.maxStatements = maxStatements;
+        this.maxBytes = maxBytes;
+        this.consistencyLevel = consistencyLevel;
+    }
+
+    /**
+     * Adds a statement and returns the batch it closed, if any (the closed batch does not contain
+     * {@code statement}). Returns null while the current batch still has room.
+     */
+    public BatchStatement add(Object partition, BatchableStatement<?> statement, int payloadBytes) {
+        int size = payloadBytes + STATEMENT_OVERHEAD_BYTES;
+        BatchStatement closed = null;
+        if (current != null
+                && (statements >= maxStatements
+                || bytes + size > maxBytes
+                || !Objects.equals(currentPartition, partition))) {
+            closed = flush();
+        }
+        if (current == null) {
+            current = BatchStatement.builder(DefaultBatchType.UNLOGGED).setConsistencyLevel(consistencyLevel);
+            currentPartition = partition;
+        }
+        current.addStatement(statement);
+        statements++;
+        bytes += size;
+        return closed;
+    }
+
+    /**
+     * Closes and returns the pending batch, or null if nothing is pending.
+     */
+    public BatchStatement flush() {
+        if (current == null) {
+            return null;
+        }
+        BatchStatement batch = current.build();
+        current = null;
+        currentPartition = null;
+        statements = 0;
+        bytes = 0;
+        return batch;
+    }
+}
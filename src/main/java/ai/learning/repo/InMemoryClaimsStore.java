@@ -0,0 +1,301 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import com.datastax.oss.driver.api.core.servererrors.InvalidQueryException;
+import com.datastax.oss.driver.api.core.servererrors.ServerError;
+import com.nontrauma.migration.migrationutil.repository.DeleteMetrics.StatementType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for the Keyspaces claim tables, for offline throughput testing.
+ *
+ * Each member partition is a count of claims per month (dup rows mirror claims one to one).
+ * Every statement goes through the same rate limiter and metrics as {@link ClaimsDeleteRepo}, and
+ * the store simulates:
+ * - latency: {@code latency-ms} plus up to {@code jitter-ms} per statement;
+ * - range limits: deleting more than {@code range-delete-row-limit} rows in one statement fails with
+ *   "range delete requests are limited";
+ * - throttling: statements over {@code throttle-statements-per-second} fail with a {@link ServerError}.
+ *
+ * Partitions are seeded with {@link #putMember}; unknown members have no claims.
+ */
+@Repository
+@Profile("offline")
+public class InMemoryClaimsStore implements ClaimsStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryClaimsStore.class);
+
+    private static final String RANGE_LIMIT_MESSAGE =
+            "Range delete requests are limited by the number of rows deleted (simulated)";
+
+    private final ConcurrentMap<MemberRef, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final AdaptiveRateLimiter rateLimiter;
+
+    private final DeleteMetrics deleteMetrics;
+
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final int rangeDeleteRowLimit;
+    private final int throttleStatementsPerSecond;
+
+    // Statements admitted in the current one-second throttle window.
+    private final AtomicLong throttleWindow = new AtomicLong();
+
+    @Autowired
+    public InMemoryClaimsStore(AdaptiveRateLimiter rateLimiter,
+                               DeleteMetrics deleteMetrics,
+                               @Value("${ntclaims.offline.claims.latency-ms:2}") double latencyMs,
+                               @Value("${ntclaims.offline.claims.jitter-ms:3}") double jitterMs,
+                               @Value("${ntclaims.offline.claims.range-delete-row-limit:10000}") int rangeDeleteRowLimit,
+                               @Value("${ntclaims.offline.claims.throttle-statements-per-second:3000}") int throttleStatementsPerSecond) {
+        this.rateLimiter = rateLimiter;
+        this.deleteMetrics = deleteMetrics;
+        this.latencyMicros = (long) (latencyMs * 1000);
+        this.jitterMicros = (long) (jitterMs * 1000);
+        this.rangeDeleteRowLimit = rangeDeleteRowLimit;
+        this.throttleStatementsPerSecond = throttleStatementsPerSecond;
+        log.info("InMemoryClaimsStore initialized; latencyMs={}, jitterMs={}, rangeDeleteRowLimit={}, throttleStatementsPerSecond={}",
+                latencyMs, jitterMs, rangeDeleteRowLimit, throttleStatementsPerSecond);
+    }
+
+    /**
+     * Seeds a member with {@code claims} claims spread evenly over {@code months} months from {@code firstMonth}.
+     */
+    public void putMember(long payerKey, long memberKey, LocalDate firstMonth, int months, int claims) {
+        int[] perMonth = new int[Math.max(months, 1)];
+        for (int i = 0; i < perMonth.length; i++) {
+            perMonth[i] = claims / perMonth.length + (i < claims % perMonth.length ? 1 : 0);
+        }
+        partitions.put(new MemberRef(payerKey, memberKey), new Partition(firstMonth.withDayOfMonth(1), perMonth));
+    }
+
+    public void clear() {
+        partitions.clear();
+    }
+
+    public long remainingClaims() {
+        return partitions.values().stream().mapToLong(Partition::total).sum();
+    }
+
+    @Override
+    public CompletionStage<Void> deleteClaimsByPayerAndMemberAsync(long payerKey, long memberKey) {
+        MemberRef ref = new MemberRef(payerKey, memberKey);
+        return executeAsync(StatementType.CLAIMS_PARTITION, () -> {
+                    Partition partition = partitions.get(ref);
+                    if (partition != null) {
+                        partition.checkRangeLimit(partition.total(), rangeDeleteRowLimit);
+                    }
+                    return null;
+                })
+                .thenCompose(claims -> executeAsync(StatementType.DUP_PARTITION, () -> {
+                    partitions.remove(ref);
+                    return null;
+                }));
+    }
+
+    @Override
+    public Optional<ServiceDateSpan> findServiceDateSpan(long payerKey, long memberKey) {
+        return execute(StatementType.SPAN_PROBE, () -> {
+            Partition partition = partitions.get(new MemberRef(payerKey, memberKey));
+            return (partition == null) ? Optional.<ServiceDateSpan>empty() : partition.span();
+        });
+    }
+
+    @Override
+    public CompletionStage<Integer> deleteClaimsByPayerMemberAndServiceDateRangeAsync(long payerKey,
+                                                                                      long memberKey,
+                                                                                      LocalDate fromInclusive,
+                                                                                      LocalDate toExclusive) {
+        MemberRef ref = new MemberRef(payerKey, memberKey);
+        return executeAsync(StatementType.RANGE_SELECT, () -> {
+                    Partition partition = partitions.get(ref);
+                    return (partition == null) ? 0 : partition.rows(fromInclusive, toExclusive);
+                })
+                .thenCompose(rows -> executeAsync(StatementType.RANGE_DELETE, () -> {
+                    Partition partition = partitions.get(ref);
+                    if (partition != null) {
+                        partition.checkRangeLimit(rows, rangeDeleteRowLimit);
+                        partition.delete(fromInclusive, toExclusive);
+                    }
+                    return rows;
+                }));
+    }
+
+    @Override
+    public CompletionStage<PartitionProfile> profilePartitionAsync(long payerKey, long memberKey) {
+        MemberRef ref = new MemberRef(payerKey, memberKey);
+        return executeAsync(StatementType.PROFILE_CLAIMS, () -> {
+                    Partition partition = partitions.get(ref);
+                    return (partition == null) ? Partition.EMPTY_PROFILE : partition.profile();
+                })
+                .thenCompose(profile -> executeAsync(StatementType.PROFILE_DUP, () -> profile));
+    }
+
+    private <T> T execute(StatementType type, Supplier<T> statement) {
+        rateLimiter.acquire();
+        deleteMetrics.statementStarted();
+        long start = System.nanoTime();
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(nextLatencyMicros()));
+        try {
+            throttle();
+            T result = statement.get();
+            long latency = System.nanoTime() - start;
+            rateLimiter.onSuccess(latency);
+            deleteMetrics.statementFinished(type, latency, true);
+            return result;
+        } catch (RuntimeException e) {
+            rateLimiter.onError(e);
+            deleteMetrics.statementFinished(type, System.nanoTime() - start, false);
+            throw e;
+        }
+    }
+
+    private <T> CompletionStage<T> executeAsync(StatementType type, Supplier<T> statement) {
+        return rateLimiter.acquireAsync().thenCompose(ready -> {
+            deleteMetrics.statementStarted();
+            long start = System.nanoTime();
+            Executor delayed = CompletableFuture.delayedExecutor(nextLatencyMicros(), TimeUnit.MICROSECONDS);
+            return CompletableFuture.supplyAsync(() -> {
+                throttle();
+                return statement.get();
+            }, delayed).whenComplete((result, error) -> {
+                long latency = System.nanoTime() - start;
+                if (error == null) {
+                    rateLimiter.onSuccess(latency);
+                } else {
+                    rateLimiter.onError(error);
+                }
+                deleteMetrics.statementFinished(type, latency, error == null);
+            });
+        });
+    }
+
+    private long nextLatencyMicros() {
+        return latencyMicros + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros + 1) : 0);
+    }
+
+    /**
+     * Fixed one-second windows: the high bits of {@code throttleWindow} hold the second, the low
+     * 32 bits the statements admitted in it.
+     */
+    private void throttle() {
+        if (throttleStatementsPerSecond <= 0) {
+            return;
+        }
+        long second = System.nanoTime() / 1_000_000_000L;
+        long admitted = throttleWindow.updateAndGet(window -> (window >>> 32) == second
+                ? window + 1
+                : (second << 32) | 1);
+        if ((admitted & 0xFFFF_FFFFL) > throttleStatementsPerSecond) {
+            throw new ServerError(null, "Throttling: write capacity exceeded (simulated)");
+        }
+    }
+
+    private record MemberRef(long payerKey, long memberKey) {
+    }
+
+    /**
+     * Claims per month, starting at {@code firstMonth}.
+     */
+    private static final class Partition {
+
+        static final PartitionProfile EMPTY_PROFILE = new PartitionProfile(0, 0, 0, new TreeMap<>());
+
+        private final LocalDate firstMonth;
+
+        // Guarded by this.
+        private final int[] claimsPerMonth;
+
+        Partition(LocalDate firstMonth, int[] claimsPerMonth) {
+            this.firstMonth = firstMonth;
+            this.claimsPerMonth = claimsPerMonth;
+        }
+
+        synchronized long total() {
+            long total = 0;
+            for (int claims : claimsPerMonth) {
+                total += claims;
+            }
+            return total;
+        }
+
+        synchronized Optional<ServiceDateSpan> span() {
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < claimsPerMonth.length; i++) {
+                if (claimsPerMonth[i] > 0) {
+                    if (first < 0) first = i;
+                    last = i;
+                }
+            }
+            if (first < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new ServiceDateSpan(firstMonth.plusMonths(first),
+                    firstMonth.plusMonths(last + 1).minusDays(1)));
+        }
+
+        // One claim number per claim, and dup rows mirror claims.
+        synchronized PartitionProfile profile() {
+            NavigableMap<YearMonth, Integer> perMonth = new TreeMap<>();
+            long total = 0;
+            for (int i = 0; i < claimsPerMonth.length; i++) {
+                if (claimsPerMonth[i] > 0) {
+                    perMonth.put(YearMonth.from(firstMonth.plusMonths(i)), claimsPerMonth[i]);
+                    total += claimsPerMonth[i];
+                }
+            }
+            return new PartitionProfile(total, total, total, perMonth);
+        }
+
+        // Months are the unit of the model: a month is in the range if its first day is.
+        synchronized int rows(LocalDate fromInclusive, LocalDate toExclusive) {
+            int rows = 0;
+            for (int i = 0; i < claimsPerMonth.length; i++) {
+                if (inRange(firstMonth.plusMonths(i), fromInclusive, toExclusive)) {
+                    rows += claimsPerMonth[i];
+                }
+            }
+            return rows;
+        }
+
+        synchronized void delete(LocalDate fromInclusive, LocalDate toExclusive) {
+            for (int i = 0; i < claimsPerMonth.length; i++) {
+                if (inRange(firstMonth.plusMonths(i), fromInclusive, toExclusive)) {
+                    claimsPerMonth[i] = 0;
+                }
+            }
+        }
+
+        void checkRangeLimit(long rows, int limit) {
+            if (rows > limit) {
+                throw new InvalidQueryException(null, RANGE_LIMIT_MESSAGE);
+            }
+        }
+
+        private static boolean inRange(LocalDate month, LocalDate fromInclusive, LocalDate toExclusive) {
+            return !month.isBefore(fromInclusive) && month.isBefore(toExclusive);
+        }
+    }
+}
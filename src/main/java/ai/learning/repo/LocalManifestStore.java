@@ -0,0 +1,107 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Local-filesystem stand-in for the raw manifest bucket, for offline throughput testing.
+ *
+ * Keys are paths relative to {@code root}; archiving moves a file under {@code root/<moveDirectory>}
+ * and dead letters are copied under {@code root/dead-letter-members/<payerKey>}, mirroring the
+ * S3 layout. Opening a manifest waits {@code open-latency-ms} to stand in for the time to first byte.
+ */
+@Repository
+@Profile("offline")
+public class LocalManifestStore implements ManifestStore {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalManifestStore.class);
+
+    private final Path root;
+
+    private final long openLatencyMs;
+
+    @Autowired
+    public LocalManifestStore(@Value("${ntclaims.offline.manifest.dir:${java.io.tmpdir}/claims-delete-offline}") String root,
+                              @Value("${ntclaims.offline.manifest.open-latency-ms:20}") long openLatencyMs) {
+        this.root = Path.of(root);
+        this.openLatencyMs = openLatencyMs;
+        log.info("LocalManifestStore initialized; root={}, openLatencyMs={}", this.root, openLatencyMs);
+    }
+
+    public Path root() {
+        return root;
+    }
+
+    @Override
+    public List<String> listManifests(String prefix) {
+        Path directory = root.resolve(prefix);
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list manifests under " + directory, e);
+        }
+    }
+
+    @Override
+    public Stream<String> streamManifests(String prefix) {
+        return listManifests(prefix).stream();
+    }
+
+    @Override
+    public CompletableFuture<Manifest> openManifest(String key) {
+        return CompletableFuture.supplyAsync(() -> {
+            Path file = root.resolve(key);
+            try {
+                InputStream in = Files.newInputStream(file);
+                return new Manifest(key, in, Files.size(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open manifest " + key, e);
+            }
+        }, CompletableFuture.delayedExecutor(openLatencyMs, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public CompletableFuture<Void> archiveManifest(String key, long contentLength, String moveDirectory) {
+        Path target = root.resolve(moveDirectory).resolve(key);
+        try {
+            Files.createDirectories(target.getParent());
+            Files.move(root.resolve(key), target, StandardCopyOption.REPLACE_EXISTING);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new UncheckedIOException("Cannot move manifest " + key, e));
+        }
+    }
+
+    @Override
+    public void uploadDeadLetterFile(Long payerKey, File fileToUpload) {
+        Path target = root.resolve("dead-letter-members").resolve(String.valueOf(payerKey)).resolve(fileToUpload.getName());
+        try {
+            Files.createDirectories(target.getParent());
+            Files.copy(fileToUpload.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store dead-letter file " + fileToUpload, e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Storage of member delete manifests, as used by the delete pipeline.
+ *
+ * {@link S3Repository} reads the raw bucket; {@link LocalManifestStore} reads a local directory
+ * under the {@code offline} profile.
+ */
+public interface ManifestStore {
+
+    /**
+     * An opened manifest. The body streams while it downloads and must be closed by the reader.
+     */
+    record Manifest(String key, InputStream body, long contentLength) {
+    }
+
+    List<String> listManifests(String prefix);
+
+    /**
+     * Keys under {@code prefix}, produced while the listing is still running. The stream must be
+     * closed; closing it early stops the listing.
+     */
+    Stream<String> streamManifests(String prefix);
+
+    /**
+     * Starts reading {@code key}; the future completes once the body can be read.
+     */
+    CompletableFuture<Manifest> openManifest(String key);
+
+    /**
+     * Moves a processed manifest under {@code moveDirectory}; the future completes once the
+     * manifest is no longer at {@code key}.
+     */
+    CompletableFuture<Void> archiveManifest(String key, long contentLength, String moveDirectory);
+
+    void uploadDeadLetterFile(Long payerKey, File fileToUpload);
+}
@@ -0,0 +1,40 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.NavigableMap;
+
+/**
+ * Read-only size of a member's claims and dup partitions, as used to plan its delete.
+ *
+ * @param claimRows         rows in the claims partition
+ * @param claimNumbers      distinct claim numbers in the claims partition
+ * @param dupRows           rows in the claim_duplicate_chk_svcthrudt partition
+ * @param claimRowsPerMonth claims rows by servicebegindate month; empty if there are none
+ */
+public record PartitionProfile(long claimRows,
+                               long claimNumbers,
+                               long dupRows,
+                               NavigableMap<YearMonth, Integer> claimRowsPerMonth) {
+
+    public PartitionProfile {
+        claimRowsPerMonth = Collections.unmodifiableNavigableMap(claimRowsPerMonth);
+    }
+
+    /**
+     * Claims rows with a servicebegindate in {@code [fromInclusive, toExclusive)}, by whole months.
+     */
+    public long claimRows(LocalDate fromInclusive, LocalDate toExclusive) {
+        long rows = 0;
+        for (int monthRows : claimRowsPerMonth.subMap(YearMonth.from(fromInclusive), true,
+                YearMonth.from(toExclusive), false).values()) {
+            rows += monthRows;
+        }
+        return rows;
+    }
+
+    public boolean isEmpty() {
+        return claimRows == 0 && dupRows == 0;
+    }
+}
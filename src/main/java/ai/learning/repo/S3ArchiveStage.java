@@ -0,0 +1,235 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Moves objects within a bucket (server-side copy, then delete of the source) with tracked completion.
+ *
+ * - copies: at most {@code maxConcurrentCopies} in flight; {@link #archive} blocks while the limit
+ *   is reached. Objects over 5 GB, the single CopyObject limit, are copied with UploadPartCopy in
+ *   {@code copyPartSizeBytes} parts.
+ * - deletes: sources whose copy succeeded are removed with DeleteObjects, up to 1000 keys per call,
+ *   sent when a batch is full or {@code deleteFlushMs} after its first key.
+ *
+ * The future returned by {@link #archive} completes once the source is deleted, so callers can wait
+ * for their files; {@link #drain} waits for everything still in flight at shutdown.
+ */
+final class S3ArchiveStage {
+
+    private static final Logger log = LoggerFactory.getLogger(S3ArchiveStage.class);
+
+    static final long MULTIPART_COPY_THRESHOLD_BYTES = 5L * 1024 * 1024 * 1024;
+
+    static final int MAX_DELETE_KEYS = 1000;
+
+    private final S3AsyncClient s3Client;
+
+    private final Semaphore copyPermits;
+
+    private final long copyPartSizeBytes;
+
+    private final long deleteFlushMs;
+
+    private final ScheduledExecutorService deleteFlusher;
+
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this.
+    private final Map<String, List<PendingDelete>> pendingDeletes = new HashMap<>();
+
+    private record PendingDelete(String key, CompletableFuture<Void> deleted) {
+    }
+
+    S3ArchiveStage(S3AsyncClient s3Client, int maxConcurrentCopies, long copyPartSizeBytes, long deleteFlushMs) {
+        this.s3Client = s3Client;
+        this.copyPermits = new Semaphore(maxConcurrentCopies);
+        this.copyPartSizeBytes = copyPartSizeBytes;
+        this.deleteFlushMs = deleteFlushMs;
+        this.deleteFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "s3-archive-delete-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Moves {@code key} to {@code moveDirectory/key} in the same bucket. {@code sizeBytes} selects
+     * single or multipart copy; pass a negative value if unknown and the size is looked up.
+     */
+    CompletableFuture<Void> archive(String bucket, String key, String moveDirectory, long sizeBytes) {
+        String target = moveDirectory + "/" + key;
+        try {
+            copyPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for an archive copy slot");
+        }
+
+        CompletableFuture<Long> size = (sizeBytes >= 0)
+                ? CompletableFuture.completedFuture(sizeBytes)
+                : s3Client.headObject(b -> b.bucket(bucket).key(key)).thenApply(head -> head.contentLength());
+        CompletableFuture<Void> archived = size
+                .thenCompose(bytes -> bytes > MULTIPART_COPY_THRESHOLD_BYTES
+                        ? multipartCopy(bucket, key, target, bytes)
+                        : s3Client.copyObject(b -> b.sourceBucket(bucket).sourceKey(key)
+                                .destinationBucket(bucket).destinationKey(target)).thenApply(response -> (Void) null))
+                .whenComplete((ignored, error) -> copyPermits.release())
+                .thenCompose(copied -> deleteSource(bucket, key))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.error("Error moving file {} to {}", key, moveDirectory, error);
+                    } else {
+                        log.debug("File {} moved to {}", key, moveDirectory);
+                    }
+                });
+        inFlight.add(archived);
+        archived.whenComplete((ignored, error) -> inFlight.remove(archived));
+        return archived;
+    }
+
+    private CompletableFuture<Void> multipartCopy(String bucket, String sourceKey, String targetKey, long sizeBytes) {
+        return s3Client.createMultipartUpload(b -> b.bucket(bucket).key(targetKey))
+                .thenCompose(upload -> {
+                    String uploadId = upload.uploadId();
+                    List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+                    int partNumber = 1;
+                    for (long start = 0; start < sizeBytes; start += copyPartSizeBytes, partNumber++) {
+                        int part = partNumber;
+                        String range = "bytes=" + start + "-" + (Math.min(start + copyPartSizeBytes, sizeBytes) - 1);
+                        parts.add(s3Client.uploadPartCopy(b -> b.sourceBucket(bucket).sourceKey(sourceKey)
+                                        .destinationBucket(bucket).destinationKey(targetKey)
+                                        .uploadId(uploadId).partNumber(part).copySourceRange(range))
+                                .thenApply(response -> CompletedPart.builder()
+                                        .partNumber(part)
+                                        .eTag(response.copyPartResult().eTag())
+                                        .build()));
+                    }
+                    return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                            .thenCompose(all -> s3Client.completeMultipartUpload(b -> b.bucket(bucket).key(targetKey)
+                                    .uploadId(uploadId)
+                                    .multipartUpload(CompletedMultipartUpload.builder()
+                                            .parts(parts.stream().map(CompletableFuture::join).toList())
+                                            .build())))
+                            .handle((response, error) -> {
+                                if (error == null) {
+                                    return CompletableFuture.<Void>completedFuture(null);
+                                }
+                                // Don't leave billed, orphaned parts behind.
+                                return s3Client.abortMultipartUpload(b -> b.bucket(bucket).key(targetKey).uploadId(uploadId))
+                                        .handle((aborted, abortError) -> (Void) null)
+                                        .thenCompose(aborted -> CompletableFuture.<Void>failedFuture(error));
+                            })
+                            .thenCompose(result -> result);
+                });
+    }
+
+    private CompletableFuture<Void> deleteSource(String bucket, String key) {
+        PendingDelete pending = new PendingDelete(key, new CompletableFuture<>());
+        List<PendingDelete> full = null;
+        boolean scheduleFlush = false;
+        synchronized (this) {
+            List<PendingDelete> batch = pendingDeletes.computeIfAbsent(bucket, b -> new ArrayList<>());
+            batch.add(pending);
+            if (batch.size() >= MAX_DELETE_KEYS) {
+                full = pendingDeletes.remove(bucket);
+            } else {
+                scheduleFlush = batch.size() == 1;
+            }
+        }
+        if (full != null) {
+            sendDeletes(bucket, full);
+        } else if (scheduleFlush) {
+            try {
+                deleteFlusher.schedule(() -> flush(bucket), deleteFlushMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: don't wait for the batch to fill.
+                flush(bucket);
+            }
+        }
+        return pending.deleted();
+    }
+
+    private void flush(String bucket) {
+        List<PendingDelete> batch;
+        synchronized (this) {
+            batch = pendingDeletes.remove(bucket);
+        }
+        if (batch != null && !batch.isEmpty()) {
+            sendDeletes(bucket, batch);
+        }
+    }
+
+    private void sendDeletes(String bucket, List<PendingDelete> batch) {
+        List<ObjectIdentifier> objects = batch.stream()
+                .map(pending -> ObjectIdentifier.builder().key(pending.key()).build())
+                .toList();
+        s3Client.deleteObjects(b -> b.bucket(bucket).delete(Delete.builder().objects(objects).quiet(true).build()))
+                .whenComplete((response, error) -> completeDeletes(batch, response, error));
+    }
+
+    private static void completeDeletes(List<PendingDelete> batch, DeleteObjectsResponse response, Throwable error) {
+        if (error != null) {
+            batch.forEach(pending -> pending.deleted().completeExceptionally(error));
+            return;
+        }
+        // Quiet mode: only failed keys are reported.
+        Map<String, String> failed = response.errors().stream()
+                .collect(Collectors.toMap(S3Error::key, e -> e.code() + ": " + e.message(), (a, b) -> a));
+        for (PendingDelete pending : batch) {
+            String failure = failed.get(pending.key());
+            if (failure == null) {
+                pending.deleted().complete(null);
+            } else {
+                pending.deleted().completeExceptionally(
+                        new CompletionException(new IllegalStateException("Delete of " + pending.key() + " failed: " + failure)));
+            }
+        }
+    }
+
+    /**
+     * Sends pending deletes now and waits up to {@code timeoutMs} for every archive in flight.
+     */
+    void drain(long timeoutMs) {
+        List<String> buckets;
+        synchronized (this) {
+            buckets = List.copyOf(pendingDeletes.keySet());
+        }
+        buckets.forEach(this::flush);
+        try {
+            CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("{} archive move(s) still in flight after {} ms", inFlight.size(), timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Individual failures were already logged.
+        }
+        deleteFlusher.shutdown();
+    }
+}
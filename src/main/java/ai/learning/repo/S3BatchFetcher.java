@@ -0,0 +1,243 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Fetches many objects from one bucket on the async client with at most {@code maxConcurrency}
+ * objects in flight, without blocking any shared pool.
+ *
+ * Every object is read with a ranged GET of the first {@code partSizeBytes}; when the response shows
+ * the object is larger, the remaining parts are fetched in parallel, {@code partsPerObject} at a
+ * time, into one array. Small objects therefore cost a single request. The later parts are read
+ * with {@code If-Match} on the first part's ETag, so an object overwritten mid-fetch fails instead
+ * of being stitched together from two versions.
+ *
+ * Missing keys and failed fetches are logged and skipped, as {@code getContentsBatch} always did.
+ */
+final class S3BatchFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(S3BatchFetcher.class);
+
+    private static final int HTTP_PRECONDITION_FAILED = 412;
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final long MAX_ARRAY_BYTES = Integer.MAX_VALUE - 8;
+
+    private final S3AsyncClient s3Client;
+
+    private final Semaphore permits;
+
+    private final long partSizeBytes;
+
+    private final int partsPerObject;
+
+    S3BatchFetcher(S3AsyncClient s3Client, int maxConcurrency, long partSizeBytes, int partsPerObject) {
+        this.s3Client = s3Client;
+        this.permits = new Semaphore(maxConcurrency);
+        this.partSizeBytes = partSizeBytes;
+        this.partsPerObject = partsPerObject;
+    }
+
+    /**
+     * Fetches {@code keys} and hands each object to {@code onObject} (one call at a time). With
+     * {@code requestOrder} objects are delivered in the order of {@code keys}, held back until the
+     * ones before them are done; otherwise as each completes. An object holds its slot until it is
+     * delivered, so at most {@code maxConcurrency} objects are fetched or held back at once. Blocks
+     * the caller only while the concurrency limit is reached; the future completes after the last
+     * delivery.
+     */
+    CompletableFuture<Void> fetch(String bucket, List<String> keys, boolean requestOrder,
+                                  BiConsumer<String, byte[]> onObject) {
+        Delivery delivery = new Delivery(keys, requestOrder, onObject);
+        CompletableFuture<?>[] fetches = new CompletableFuture<?>[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            int index = i;
+            String key = keys.get(i);
+            acquire();
+            fetches[i] = fetchObject(bucket, key)
+                    .handle((bytes, error) -> {
+                        if (error != null) {
+                            logFailure(key, error);
+                            bytes = null;
+                        }
+                        permits.release(delivery.complete(index, bytes));
+                        return null;
+                    });
+        }
+        return CompletableFuture.allOf(fetches);
+    }
+
+    private CompletableFuture<byte[]> fetchObject(String bucket, String key) {
+        return getRange(bucket, key, 0, partSizeBytes - 1, null)
+                .thenCompose(first -> {
+                    long total = totalSize(first.response());
+                    byte[] firstBytes = first.asByteArrayUnsafe();
+                    if (total <= firstBytes.length) {
+                        return CompletableFuture.completedFuture(firstBytes);
+                    }
+                    if (total > MAX_ARRAY_BYTES) {
+                        return CompletableFuture.failedFuture(new IllegalStateException(
+                                "Object " + key + " is too large to fetch into memory: " + total + " bytes"));
+                    }
+                    byte[] whole = new byte[(int) total];
+                    System.arraycopy(firstBytes, 0, whole, 0, firstBytes.length);
+                    String eTag = first.response().eTag();
+                    return fetchRemainingParts(bucket, key, eTag, whole, firstBytes.length).thenApply(done -> whole);
+                })
+                .exceptionallyCompose(error -> {
+                    // A range on an empty object is not satisfiable; read it without one.
+                    if (unwrap(error) instanceof S3Exception s3e && s3e.statusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+                        return s3Client.getObject(b -> b.bucket(bucket).key(key), AsyncResponseTransformer.toBytes())
+                                .thenApply(ResponseBytes::asByteArrayUnsafe);
+                    }
+                    return CompletableFuture.failedFuture(error);
+                });
+    }
+
+    /**
+     * Fetches {@code [offset, whole.length)} in parts, keeping {@code partsPerObject} parts in flight.
+     */
+    private CompletableFuture<Void> fetchRemainingParts(String bucket, String key, String eTag, byte[] whole,
+                                                        long offset) {
+        int parts = (int) ((whole.length - offset + partSizeBytes - 1) / partSizeBytes);
+        AtomicInteger nextPart = new AtomicInteger();
+        CompletableFuture<?>[] lanes = new CompletableFuture<?>[Math.min(partsPerObject, parts)];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = nextPart(bucket, key, eTag, whole, offset, parts, nextPart);
+        }
+        return CompletableFuture.allOf(lanes);
+    }
+
+    private CompletableFuture<Void> nextPart(String bucket, String key, String eTag, byte[] whole, long offset,
+                                             int parts, AtomicInteger nextPart) {
+        int part = nextPart.getAndIncrement();
+        if (part >= parts) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long start = offset + part * partSizeBytes;
+        long end = Math.min(start + partSizeBytes, whole.length) - 1;
+        return getRange(bucket, key, start, end, eTag)
+                .exceptionallyCompose(error -> {
+                    if (unwrap(error) instanceof S3Exception s3e && s3e.statusCode() == HTTP_PRECONDITION_FAILED) {
+                        return CompletableFuture.failedFuture(new IllegalStateException(
+                                "Object " + key + " changed while it was being fetched", s3e));
+                    }
+                    return CompletableFuture.failedFuture(error);
+                })
+                .thenCompose(bytes -> {
+                    byte[] partBytes = bytes.asByteArrayUnsafe();
+                    System.arraycopy(partBytes, 0, whole, (int) start, partBytes.length);
+                    return nextPart(bucket, key, eTag, whole, offset, parts, nextPart);
+                });
+    }
+
+    // ifMatch is null for the first part, which decides the version the later parts must match.
+    private CompletableFuture<ResponseBytes<GetObjectResponse>> getRange(String bucket, String key, long start, long end,
+                                                                         String ifMatch) {
+        return s3Client.getObject(b -> b.bucket(bucket).key(key).range("bytes=" + start + "-" + end).ifMatch(ifMatch),
+                AsyncResponseTransformer.toBytes());
+    }
+
+    // Content-Range: bytes <start>-<end>/<total>; absent if the whole object was returned.
+    private static long totalSize(GetObjectResponse response) {
+        String contentRange = response.contentRange();
+        if (contentRange == null) {
+            return response.contentLength();
+        }
+        return Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1).trim());
+    }
+
+    private static void logFailure(String key, Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof NoSuchKeyException) {
+            log.error("File not found on S3: {}", key, cause);
+        } else {
+            log.error("Error retrieving content for file: {}", key, cause);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+    }
+
+    private void acquire() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a fetch slot");
+        }
+    }
+
+    /**
+     * Serializes deliveries and, in request order, holds results back until their predecessors are done.
+     */
+    private static final class Delivery {
+
+        private final List<String> keys;
+        private final boolean requestOrder;
+        private final BiConsumer<String, byte[]> onObject;
+
+        // Guarded by this. In request order: fetched but not yet delivered, and the next index to deliver.
+        private final byte[][] held;
+        private final boolean[] done;
+        private int nextIndex;
+
+        Delivery(List<String> keys, boolean requestOrder, BiConsumer<String, byte[]> onObject) {
+            this.keys = keys;
+            this.requestOrder = requestOrder;
+            this.onObject = onObject;
+            this.held = requestOrder ? new byte[keys.size()][] : null;
+            this.done = requestOrder ? new boolean[keys.size()] : null;
+        }
+
+        /**
+         * Records a finished fetch; bytes is null for a missing or failed object, which is skipped.
+         * Returns how many objects this delivered or skipped, whose fetch slots can now be released.
+         */
+        synchronized int complete(int index, byte[] bytes) {
+            if (!requestOrder) {
+                deliver(index, bytes);
+                return 1;
+            }
+            held[index] = bytes;
+            done[index] = true;
+            int delivered = 0;
+            while (nextIndex < done.length && done[nextIndex]) {
+                byte[] next = held[nextIndex];
+                held[nextIndex] = null;
+                deliver(nextIndex, next);
+                nextIndex++;
+                delivered++;
+            }
+            return delivered;
+        }
+
+        private void deliver(int index, byte[] bytes) {
+            if (bytes == null) {
+                return;
+            }
+            try {
+                onObject.accept(keys.get(index), bytes);
+            } catch (RuntimeException e) {
+                log.error("Consumer failed for file: {}", keys.get(index), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lists every key under a prefix with ListObjectsV2, walking "/"-delimited sub-prefixes (payer,
+ * date shard, ...) in parallel on {@code executor}.
+ *
+ * Keys are handed out through a bounded queue as pages arrive, so the first manifests can be
+ * processed while the rest of the prefix is still being listed, and listing slows down when the
+ * consumer falls behind. Keys of different sub-prefixes interleave in no particular order.
+ * Closing the stream stops the walk.
+ *
+ * The executor is shared by every walk, so a walk never blocks a thread on its full queue: a
+ * sub-prefix whose keys do not fit is parked with its place in the listing and re-submitted as
+ * the consumer takes keys. A walk with a slow consumer therefore holds no listing threads.
+ */
+final class S3PrefixLister {
+
+    private static final Object END = new Object();
+
+    private static final long POLL_MS = 100;
+
+    // Most keys one ListObjectsV2 page returns.
+    private static final int PAGE_KEYS = 1000;
+
+    private final S3Client s3Client;
+
+    private final String bucket;
+
+    private final Executor executor;
+
+    private final int queueCapacity;
+
+    S3PrefixLister(S3Client s3Client, String bucket, Executor executor, int queueCapacity) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+    }
+
+    Stream<String> stream(String prefix) {
+        Walk walk = new Walk();
+        walk.submit(prefix);
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(walk, Spliterator.NONNULL), false)
+                .onClose(walk::cancel);
+    }
+
+    private final class Walk implements Iterator<String> {
+
+        // Keys, then END once every level is listed.
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(queueCapacity);
+
+        // Levels waiting for room in the queue.
+        private final Queue<Level> parked = new ConcurrentLinkedQueue<>();
+
+        // Levels submitted and not yet fully listed, parked ones included.
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        private volatile RuntimeException failure;
+
+        private Object next;
+
+        private boolean finished;
+
+        void submit(String prefix) {
+            pending.incrementAndGet();
+            executor.execute(new Level(prefix));
+        }
+
+        /**
+         * Re-submits parked levels while the queue has room, about one per page that fits.
+         */
+        private void resumeParked() {
+            int resumable = Math.max(1, queue.remainingCapacity() / PAGE_KEYS);
+            Level level;
+            while (resumable-- > 0 && !cancelled && queue.remainingCapacity() > 0
+                    && (level = parked.poll()) != null) {
+                executor.execute(level);
+            }
+        }
+
+        private void levelDone() {
+            // A level's sub-prefixes are submitted before it completes, so zero means the walk is done.
+            if (pending.decrementAndGet() == 0) {
+                // If the queue is full, the consumer sees the count once it has drained it.
+                queue.offer(END);
+            } else {
+                resumeParked();
+            }
+        }
+
+        private void fail(RuntimeException e) {
+            failure = e;
+            cancel();
+        }
+
+        void cancel() {
+            cancelled = true;
+            parked.clear();
+            queue.clear();
+        }
+
+        /**
+         * One sub-prefix, listed a page at a time. Runs until its keys no longer fit in the queue,
+         * then parks with the rest of the current page and the next page's token.
+         */
+        private final class Level implements Runnable {
+
+            private final String prefix;
+
+            private boolean listed;
+            private String continuationToken;
+            private List<String> pageKeys = List.of();
+            private int queuedKeys;
+
+            Level(String prefix) {
+                this.prefix = prefix;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    while (!cancelled) {
+                        if (!queueKeys() || queue.remainingCapacity() == 0 && hasMorePages()) {
+                            park();
+                            return;
+                        }
+                        if (!hasMorePages()) {
+                            levelDone();
+                            return;
+                        }
+                        listPage();
+                    }
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+
+            private boolean hasMorePages() {
+                return !listed || continuationToken != null;
+            }
+
+            private boolean queueKeys() {
+                while (queuedKeys < pageKeys.size()) {
+                    if (!queue.offer(pageKeys.get(queuedKeys))) {
+                        return false;
+                    }
+                    queuedKeys++;
+                }
+                return true;
+            }
+
+            private void listPage() {
+                ListObjectsV2Response page = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucket)
+                        .prefix(prefix)
+                        .delimiter("/")
+                        .continuationToken(continuationToken)
+                        .build());
+                listed = true;
+                continuationToken = Boolean.TRUE.equals(page.isTruncated()) ? page.nextContinuationToken() : null;
+                for (CommonPrefix subPrefix : page.commonPrefixes()) {
+                    submit(subPrefix.prefix());
+                }
+                List<String> keys = new ArrayList<>(page.contents().size());
+                for (S3Object object : page.contents()) {
+                    if (!object.key().endsWith("/")) {
+                        keys.add(object.key());
+                    }
+                }
+                pageKeys = keys;
+                queuedKeys = 0;
+            }
+
+            private void park() {
+                parked.add(this);
+                // The consumer may have made room before this level was parked; don't wait for its next take.
+                resumeParked();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            while (true) {
+                RuntimeException failed = failure;
+                if (failed != null) {
+                    finished = true;
+                    throw new CompletionException("Listing manifests failed", failed);
+                }
+                Object item;
+                try {
+                    item = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while listing manifests");
+                }
+                if (item == null) {
+                    if (pending.get() == 0 && queue.isEmpty()) {
+                        finished = true;
+                        return false;
+                    }
+                    resumeParked();
+                    continue;
+                }
+                if (item == END) {
+                    finished = true;
+                    return false;
+                }
+                resumeParked();
+                next = item;
+                return true;
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String key = (String) next;
+            next = null;
+            return key;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import software.amazon.awssdk.transfer.s3.model.FileUpload;
+import software.amazon.awssdk.transfer.s3.progress.TransferProgressSnapshot;
+
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A file upload running on the transfer manager: its completion and live progress.
+ */
+public final class S3UploadHandle {
+
+    private final String key;
+
+    private final FileUpload upload;
+
+    private final CompletableFuture<Void> completion;
+
+    S3UploadHandle(String key, FileUpload upload) {
+        this.key = key;
+        this.upload = upload;
+        this.completion = upload.completionFuture().thenApply(completed -> null);
+    }
+
+    public String key() {
+        return key;
+    }
+
+    /**
+     * Completes when every part has been uploaded and the object exists at {@link #key()}.
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public long bytesTransferred() {
+        return snapshot().transferredBytes();
+    }
+
+    public OptionalLong totalBytes() {
+        return snapshot().totalBytes();
+    }
+
+    /**
+     * Fraction of the file uploaded so far, between 0 and 1, if the size is known.
+     */
+    public OptionalDouble ratioTransferred() {
+        return snapshot().ratioTransferred();
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * Stops the upload; parts already sent are discarded.
+     */
+    public void cancel() {
+        upload.completionFuture().cancel(true);
+    }
+
+    private TransferProgressSnapshot snapshot() {
+        return upload.progress().snapshot();
+    }
+}
@@ -0,0 +1,9 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import java.time.LocalDate;
+
+/**
+ * First and last servicebegindate present in a member's claims partition (both inclusive).
+ */
+public record ServiceDateSpan(LocalDate first, LocalDate last) {
+}
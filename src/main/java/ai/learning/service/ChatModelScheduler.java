@@ -0,0 +1,316 @@
+package ai.learning.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Admission control in front of the chat model, which can only run a few generations at once.
+ *
+ * - concurrency: at most {@code ai.scheduler.max-concurrent} generations run; the rest wait in a
+ *   queue of {@code queue-capacity}, interactive requests ahead of batch ones, FIFO within a priority.
+ * - load shedding: a request is refused with {@link ChatOverloadedException} when the queue is full
+ *   or its expected wait exceeds its priority's {@code max-queue-time}, and fails with it if it is
+ *   still queued when that budget runs out. The expected wait comes from a moving average of
+ *   generation times.
+ * - waiting holds no thread: queued requests are futures, completed when a slot frees up. Blocking
+ *   calls then run on a pool of {@code max-concurrent} workers.
+ *
+ * Meters: {@code ai.scheduler.queue.depth} and {@code ai.scheduler.wait} per priority,
+ * {@code ai.scheduler.active}, and {@code ai.scheduler.rejected} by reason.
+ */
+@Slf4j
+@Component
+public class ChatModelScheduler {
+
+    public enum Priority {
+        INTERACTIVE, BATCH;
+
+        public static Priority parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        private String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Weight of the latest generation in the average generation time.
+    private static final double SERVICE_TIME_ALPHA = 0.2;
+
+    private final int maxConcurrent;
+
+    private final int queueCapacity;
+
+    private final Map<Priority, Duration> maxQueueTime = new EnumMap<>(Priority.class);
+
+    private final ExecutorService workers;
+
+    private final ScheduledExecutorService expiry;
+
+    // Guarded by this.
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private int running;
+    private long sequence;
+    private double serviceNanos;
+
+    private final Map<Priority, AtomicInteger> queued = new EnumMap<>(Priority.class);
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedWaitBudget;
+    private final Counter rejectedExpired;
+
+    @Autowired
+    public ChatModelScheduler(MeterRegistry registry,
+                              @Value("${ai.scheduler.max-concurrent:2}") int maxConcurrent,
+                              @Value("${ai.scheduler.queue-capacity:64}") int queueCapacity,
+                              @Value("${ai.scheduler.max-queue-time.interactive:PT15S}") Duration interactiveMaxQueueTime,
+                              @Value("${ai.scheduler.max-queue-time.batch:PT2M}") Duration batchMaxQueueTime,
+                              @Value("${ai.scheduler.initial-generation-time:PT5S}") Duration initialGenerationTime) {
+        this.maxConcurrent = maxConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.maxQueueTime.put(Priority.INTERACTIVE, interactiveMaxQueueTime);
+        this.maxQueueTime.put(Priority.BATCH, batchMaxQueueTime);
+        this.serviceNanos = initialGenerationTime.toNanos();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(maxConcurrent, r -> {
+            Thread t = new Thread(r, "chat-model-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.expiry = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chat-model-queue-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (Priority priority : Priority.values()) {
+            AtomicInteger depth = new AtomicInteger();
+            queued.put(priority, depth);
+            Gauge.builder("ai.scheduler.queue.depth", depth, AtomicInteger::get)
+                    .description("Generations waiting for a model slot")
+                    .tag("priority", priority.tag())
+                    .register(registry);
+            waitTimers.put(priority, Timer.builder("ai.scheduler.wait")
+                    .description("Time generations waited for a model slot")
+                    .tag("priority", priority.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        Gauge.builder("ai.scheduler.active", active, AtomicInteger::get)
+                .description("Generations running on the model")
+                .register(registry);
+        this.rejectedQueueFull = rejectedCounter(registry, "queue_full");
+        this.rejectedWaitBudget = rejectedCounter(registry, "wait_budget");
+        this.rejectedExpired = rejectedCounter(registry, "expired");
+        log.info("Chat model scheduler: maxConcurrent={}, queueCapacity={}, maxQueueTime={}",
+                maxConcurrent, queueCapacity, maxQueueTime);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("ai.scheduler.rejected")
+                .description("Generations shed by admission control")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Runs a blocking model call once a slot is free, on a scheduler worker.
+     *
+     * @throws ChatOverloadedException if the request is refused right away
+     */
+    public <T> CompletableFuture<T> call(Priority priority, Supplier<T> generation) {
+        return acquire(priority).thenApplyAsync(permit -> {
+            try {
+                return generation.get();
+            } finally {
+                permit.close();
+            }
+        }, workers);
+    }
+
+    /**
+     * Subscribes to a streamed generation once a slot is free; the slot is held until the stream
+     * completes, fails or is cancelled. Cancelling while queued leaves the queue, and a permit
+     * granted just as the subscriber cancels is closed rather than lost. A request still queued
+     * when its budget runs out fails the stream with {@link ChatOverloadedException}.
+     *
+     * @throws ChatOverloadedException if the request is refused right away
+     */
+    public <T> Flux<T> stream(Priority priority, Supplier<Flux<T>> generation) {
+        CompletableFuture<Permit> permit = acquire(priority);
+        return Flux.usingWhen(
+                Mono.fromFuture(permit).doOnDiscard(Permit.class, Permit::close),
+                granted -> generation.get(),
+                granted -> Mono.fromRunnable(granted::close));
+    }
+
+    /**
+     * Queues for a slot. The future completes with the permit, which must be closed, or fails with
+     * {@link ChatOverloadedException} if the queue-time budget runs out first.
+     */
+    private CompletableFuture<Permit> acquire(Priority priority) {
+        CompletableFuture<Permit> future = new CompletableFuture<>();
+        Waiter waiter;
+        synchronized (this) {
+            waiter = new Waiter(priority, sequence++, System.nanoTime(), future);
+            if (running < maxConcurrent && queue.isEmpty()) {
+                Permit permit = take(waiter);
+                future.complete(permit);
+                return future;
+            }
+            if (queue.size() >= queueCapacity) {
+                rejectedQueueFull.increment();
+                throw new ChatOverloadedException("Chat model queue is full", retryAfter());
+            }
+            Duration budget = maxQueueTime.get(priority);
+            long ahead = queue.stream().filter(queuedWaiter -> queuedWaiter.priority.compareTo(priority) <= 0).count();
+            long expectedWaitNanos = (long) (serviceNanos * (ahead + 1) / maxConcurrent);
+            if (expectedWaitNanos > budget.toNanos()) {
+                rejectedWaitBudget.increment();
+                throw new ChatOverloadedException("Expected wait " + Duration.ofNanos(expectedWaitNanos)
+                        + " exceeds the " + priority.tag() + " budget of " + budget, retryAfter());
+            }
+            queue.add(waiter);
+            queued.get(priority).incrementAndGet();
+            expiry.schedule(() -> expire(waiter), budget.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        // A caller that goes away (e.g. a closed stream) stops waiting.
+        future.whenComplete((permit, error) -> {
+            if (future.isCancelled()) {
+                leave(waiter);
+            }
+        });
+        return future;
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+            queued.get(waiter.priority).decrementAndGet();
+            rejectedExpired.increment();
+        }
+        waiter.future.completeExceptionally(new ChatOverloadedException(
+                "Waited longer than the " + waiter.priority.tag() + " budget of " + maxQueueTime.get(waiter.priority),
+                retryAfter()));
+    }
+
+    private synchronized void leave(Waiter waiter) {
+        if (queue.remove(waiter)) {
+            queued.get(waiter.priority).decrementAndGet();
+        }
+    }
+
+    // Called with the lock held.
+    private Permit take(Waiter waiter) {
+        running++;
+        active.incrementAndGet();
+        long grantedAt = System.nanoTime();
+        waitTimers.get(waiter.priority).record(grantedAt - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+        return new Permit(grantedAt);
+    }
+
+    private void released(long grantedAt, boolean ran) {
+        Waiter next = null;
+        Permit permit = null;
+        synchronized (this) {
+            running--;
+            active.decrementAndGet();
+            if (ran) {
+                serviceNanos += SERVICE_TIME_ALPHA * ((System.nanoTime() - grantedAt) - serviceNanos);
+            }
+            if (running < maxConcurrent && (next = queue.poll()) != null) {
+                queued.get(next.priority).decrementAndGet();
+                permit = take(next);
+            }
+        }
+        // Outside the lock: completing runs the waiter's continuation.
+        if (next != null && !next.future.complete(permit)) {
+            // Cancelled in the meantime; hand the slot on.
+            permit.release(false);
+        }
+    }
+
+    // Time for the queue ahead to drain at the current generation time.
+    private synchronized Duration retryAfter() {
+        long nanos = (long) (serviceNanos * (queue.size() + 1) / maxConcurrent);
+        return Duration.ofSeconds(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos) + 1));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        expiry.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * One model slot; closing it (more than once is harmless) frees the slot for the next waiter.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final long grantedAt;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long grantedAt) {
+            this.grantedAt = grantedAt;
+        }
+
+        @Override
+        public void close() {
+            release(true);
+        }
+
+        private void release(boolean ran) {
+            if (released.compareAndSet(false, true)) {
+                released(grantedAt, ran);
+            }
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+
+        final Priority priority;
+        final long sequence;
+        final long enqueuedAt;
+        final CompletableFuture<Permit> future;
+
+        Waiter(Priority priority, long sequence, long enqueuedAt, CompletableFuture<Permit> future) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+            this.future = future;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            return (byPriority != 0) ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ai.learning.service;
+
+import java.time.Duration;
+
+/**
+ * A generation was shed by the {@link ChatModelScheduler}: the queue was full, or the request
+ * would have waited (or did wait) longer than its priority's queue-time budget.
+ */
+public class ChatOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ChatOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * When the queue is expected to have room again.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
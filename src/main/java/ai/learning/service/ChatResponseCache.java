@@ -0,0 +1,156 @@
+package ai.learning.service;
+
+import ai.learning.service.ChatModelScheduler.Priority;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache of chat model responses, keyed by the normalized prompt and the model options
+ * it is generated with, so repeated prompts skip the inference.
+ *
+ * Concurrent requests for the same key share one generation: the first caller starts it and the
+ * others wait on the same future, as long as it was queued at their priority or a more urgent one.
+ * A more urgent request starts its own generation instead, which later requests then join, so an
+ * interactive request never waits behind a batch queue position or its budget. Failed generations
+ * are not cached. Entries expire {@code ai.generate.cache.ttl} after they were generated and the
+ * least used are evicted past {@code max-entries}.
+ *
+ * Outcomes are counted as {@code ai.generate.cache.requests} tagged hit, coalesced (joined a
+ * generation in flight) or miss.
+ */
+@Slf4j
+@Component
+public class ChatResponseCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Prompts that differ only in whitespace or Unicode composition share an entry.
+     */
+    record Key(String prompt, String model, Double temperature) {
+    }
+
+    private final boolean enabled;
+
+    private final String model;
+
+    private final Double temperature;
+
+    private final AsyncCache<Key, String> cache;
+
+    private final Counter hits;
+    private final Counter coalesced;
+    private final Counter misses;
+
+    @Autowired
+    public ChatResponseCache(MeterRegistry registry,
+                             @Value("${ai.generate.cache.enabled:true}") boolean enabled,
+                             @Value("${ai.generate.cache.max-entries:1000}") long maxEntries,
+                             @Value("${ai.generate.cache.ttl:PT10M}") Duration ttl,
+                             @Value("${spring.ai.ollama.chat.options.model:mistral}") String model,
+                             @Value("${spring.ai.ollama.chat.options.temperature:#{null}}") Double temperature) {
+        this.enabled = enabled;
+        this.model = model;
+        this.temperature = temperature;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .buildAsync();
+        this.hits = requestCounter(registry, "hit");
+        this.coalesced = requestCounter(registry, "coalesced");
+        this.misses = requestCounter(registry, "miss");
+        Gauge.builder("ai.generate.cache.size", cache.synchronous(), c -> c.estimatedSize())
+                .description("Cached chat responses")
+                .register(registry);
+        FunctionCounter.builder("ai.generate.cache.evictions", cache.synchronous(), c -> c.stats().evictionCount())
+                .description("Chat responses evicted for size")
+                .register(registry);
+        log.info("Chat response cache enabled={}; maxEntries={}, ttl={}, model={}, temperature={}",
+                enabled, maxEntries, ttl, model, temperature);
+    }
+
+    private static Counter requestCounter(MeterRegistry registry, String result) {
+        return Counter.builder("ai.generate.cache.requests")
+                .description("Generate requests, by cache outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * Returns the cached response to {@code message}, the generation already in flight for it at
+     * {@code priority} or a more urgent one, or starts one with {@code generate}. {@code generate}
+     * runs on the calling thread.
+     */
+    public CompletableFuture<String> get(String message, Priority priority,
+                                         Function<String, CompletableFuture<String>> generate) {
+        if (!enabled) {
+            return apply(generate, message);
+        }
+        Key key = new Key(normalize(message), model, temperature);
+        Generation created = new Generation(priority);
+        while (true) {
+            CompletableFuture<String> existing = cache.asMap().putIfAbsent(key, created);
+            if (existing == null) {
+                break;
+            }
+            if (existing.isDone() || !(existing instanceof Generation inFlight) || inFlight.priority.compareTo(priority) <= 0) {
+                (existing.isDone() ? hits : coalesced).increment();
+                return existing;
+            }
+            // Queued less urgently: generate at this priority and let later requests join this one.
+            if (cache.asMap().replace(key, existing, created)) {
+                break;
+            }
+        }
+        misses.increment();
+        apply(generate, message).whenComplete((response, error) -> {
+            if (error != null) {
+                // Let the next request try again.
+                cache.asMap().remove(key, created);
+                created.completeExceptionally(error);
+            } else {
+                created.complete(response);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * A generation in flight, with the priority it was queued at.
+     */
+    private static final class Generation extends CompletableFuture<String> {
+
+        final Priority priority;
+
+        Generation(Priority priority) {
+            this.priority = priority;
+        }
+    }
+
+    private static CompletableFuture<String> apply(Function<String, CompletableFuture<String>> generate, String message) {
+        try {
+            return generate.apply(message);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    static String normalize(String message) {
+        return WHITESPACE.matcher(Normalizer.normalize(message, Normalizer.Form.NFC)).replaceAll(" ").trim();
+    }
+}
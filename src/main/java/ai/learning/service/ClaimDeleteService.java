@@ -1,44 +1,242 @@
 package ai.learning.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nontrauma.migration.migrationutil.repository.DeleteMetrics;
+import com.nontrauma.migration.migrationutil.repository.ManifestStore;
+import com.nontrauma.migration.migrationutil.service.DeadLetterWriter;
+import com.nontrauma.migration.migrationutil.service.DeleteCheckpointJournal;
+import com.nontrauma.migration.migrationutil.service.DeleteJob;
+import com.nontrauma.migration.migrationutil.service.DeleteJobRegistry;
+import com.nontrauma.migration.migrationutil.service.DeletedMemberIndex;
+import com.nontrauma.migration.migrationutil.service.FileCheckpoint;
+import com.nontrauma.migration.migrationutil.service.ManifestPipeline;
+import com.nontrauma.migration.migrationutil.service.MemberClaimsDeleteService;
+import com.nontrauma.migration.migrationutil.service.MemberKeyNdjsonParser;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
 public class ClaimDeleteService {
 
-    @Autowied
+    @Autowired
     private MemberClaimsDeleteService memberClaimsDeleteService;
+    @Autowired
+    private ManifestPipeline manifestPipeline;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private DeleteCheckpointJournal checkpointJournal;
+    @Autowired
+    private ManifestStore manifestStore;
+    @Autowired
+    private DeleteJobRegistry deleteJobRegistry;
+    @Autowired
+    private DeleteMetrics deleteMetrics;
+    @Autowired
+    private DeletedMemberIndex deletedMembers;
+
+    // Member keys are handed to the delete service in chunks of this size while the file is still downloading.
+    @Value("${ntclaims.delete.member-chunk-size:1000}")
+    private int memberChunkSize;
+
+    // Token-level parsing into long[] chunks; set to false to fall back to PayerMemberDTO per line.
+    @Value("${ntclaims.delete.token-parser:true}")
+    private boolean tokenParser;
+
+    @Value("${ntclaims.delete.retry.budget-per-job:10000}")
+    private long retryBudgetPerJob;
+
+    @Value("${ntclaims.delete.dead-letter.dir:${java.io.tmpdir}/claims-delete-dead-letters}")
+    private String deadLetterDir;
+
+    // Jobs running at once; further submissions wait in QUEUED.
+    @Value("${ntclaims.delete.jobs.max-concurrent:2}")
+    private int maxConcurrentJobs;
+
+    private MemberKeyNdjsonParser memberKeyParser;
+
+    private ExecutorService jobExecutor;
+
+    @PostConstruct
+    void init() {
+        this.memberKeyParser = new MemberKeyNdjsonParser(objectMapper.getFactory());
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.jobExecutor = Executors.newFixedThreadPool(maxConcurrentJobs, r -> {
+            Thread t = new Thread(r, "claims-delete-job-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Registers a delete job for the payer and queues it. Either {@code files} or {@code prefix}
+     * (listed in the raw bucket when the job starts) names the manifests to process.
+     */
+    public DeleteJob submit(Long payerkey, List<String> files, String prefix) {
+        DeleteJob job = newJob(payerkey, files, prefix);
+        job.attach(this.jobExecutor.submit(() -> runJob(job)));
+        log.info("Submitted delete job {} for payerkey {}", job.id(), payerkey);
+        return job;
+    }
+
     @Async
     public void migratedClaimsDelete(Long payerkey, List<String> files) {
         log.info("Invoked migrateClaims for payerkey {} ", payerkey);
+        runJob(newJob(payerkey, files, null));
+    }
 
-        Consumer<byte[]> processor = t -> {
+    private DeleteJob newJob(Long payerkey, List<String> files, String prefix) {
+        String id = UUID.randomUUID().toString();
+        DeadLetterWriter deadLetters = new DeadLetterWriter(
+                Path.of(deadLetterDir, payerkey + "-" + id + ".ndjson"), objectMapper);
+        DeleteJob job = new DeleteJob(id, payerkey, files, prefix, retryBudgetPerJob, deadLetters);
+        this.deleteJobRegistry.register(job);
+        return job;
+    }
+
+    private void runJob(final DeleteJob job) {
+        final long payerKey = job.payerKey();
+        if (!job.markRunning()) {
+            log.info("Delete job {} was cancelled before it started", job.id());
+            return;
+        }
+        // A prefix is listed while its first manifests are already being deleted.
+        boolean listPrefix = job.files().isEmpty() && job.prefix() != null;
+        try (Stream<String> files = listPrefix
+                ? this.manifestStore.streamManifests(job.prefix()).peek(file -> job.fileListed())
+                : job.files().stream()) {
+
+            ManifestPipeline.FileProcessor processor = tokenParser
+                    ? memberKeyProcessor(job)
+                    : dtoProcessor(job);
+            log.info("Before calling s3repository for {}", payerKey);
+
+            // Stop handing out files once the job is cancelled; files already open finish or fail.
+            Iterable<String> remaining = files.takeWhile(file -> !job.isCancelled())::iterator;
+            this.manifestPipeline.run(remaining, processor, "deleted-members", file -> {
+                this.checkpointJournal.complete(payerKey, file);
+                job.fileDone();
+            });
+            job.markFinished(DeleteJob.Status.SUCCEEDED, null);
+        } catch (Exception e) {
+            log.error("Delete job {} failed for payerkey {}", job.id(), payerKey, e);
+            job.markFinished(DeleteJob.Status.FAILED, e.getMessage());
+        } finally {
+            persistDeletedMembers(payerKey);
+            publishDeadLetters(job);
+            log.info("Delete job {} finished with status {}", job.id(), job.status());
+        }
+    }
+
+    private void persistDeletedMembers(long payerKey) {
+        try {
+            this.deletedMembers.persist(payerKey);
+        } catch (RuntimeException e) {
+            // The periodic snapshot retries; only repeats are at stake.
+            log.error("Could not save deleted members of payerkey {}", payerKey, e);
+        }
+    }
+
+    /**
+     * Uploads the job's dead-letter file, which doubles as a manifest to replay only the failed members.
+     */
+    private void publishDeadLetters(DeleteJob job) {
+        DeadLetterWriter deadLetters = job.deadLetters();
+        deadLetters.close();
+        if (deadLetters.count() == 0) {
+            return;
+        }
+        log.warn("{} member(s) could not be deleted for payerkey {}; dead letters at {}",
+                deadLetters.count(), job.payerKey(), deadLetters.path());
+        try {
+            this.manifestStore.uploadDeadLetterFile(job.payerKey(), deadLetters.path().toFile());
+        } catch (Exception e) {
+            log.error("Dead-letter upload failed; local file kept at {}", deadLetters.path(), e);
+        }
+    }
+
+    private ManifestPipeline.FileProcessor memberKeyProcessor(final DeleteJob job) {
+        final long payerKey = job.payerKey();
+        return (file, in) -> {
             log.info("Processor is invoked..");
-            final List<PayerMemberDTO> claims = new ArrayList<>();
+            FileCheckpoint checkpoint = this.checkpointJournal.open(payerKey, file);
+            // Time spent in the deletes the parser feeds, subtracted to get the parse time alone.
+            final long[] deleteNanos = new long[1];
+            long start = System.nanoTime();
+            try {
+                long members = memberKeyParser.parse(in, memberChunkSize, (memberKeys, length) -> {
+                    long deleteStart = System.nanoTime();
+                    this.memberClaimsDeleteService.deleteMembers(job, memberKeys, length, checkpoint);
+                    deleteNanos[0] += System.nanoTime() - deleteStart;
+                });
+                this.deleteMetrics.manifestParsed(System.nanoTime() - start - deleteNanos[0], members);
+                log.info("Processed {} member(s) for payerkey {}", members, payerKey);
+            } catch (Exception e) {
+                // Rethrow so the pipeline leaves the file (and its checkpoint) in place for the next run.
+                log.error("Error while migrating claims for {}", payerKey, e);
+                throw e;
+            } finally {
+                this.checkpointJournal.close(checkpoint);
+            }
+        };
+    }
+
+    private ManifestPipeline.FileProcessor dtoProcessor(final DeleteJob job) {
+        final Long payerkey = job.payerKey();
+        return (file, in) -> {
+            log.info("Processor is invoked..");
+            FileCheckpoint checkpoint = this.checkpointJournal.open(payerkey, file);
+            final List<Long> memberKeys = new ArrayList<>(memberChunkSize);
             try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(new ByteArrayInputStream(t), StandardCharsets.UTF_8))) {
+                    new InputStreamReader(in, StandardCharsets.UTF_8))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
                     PayerMemberDTO payerMemberDTO = objectMapper.readValue(line, PayerMemberDTO.class);
-                    claims.add(payerMemberDTO);
+                    memberKeys.add(payerMemberDTO.getMemberKey());
+                    if (memberKeys.size() >= memberChunkSize) {
+                        executeDelete(job, memberKeys, checkpoint);
+                        memberKeys.clear();
+                    }
                 }
-                if (!claims.isEmpty())
-                    executeDelete(payerkey, claims);
+                if (!memberKeys.isEmpty())
+                    executeDelete(job, memberKeys, checkpoint);
             } catch (Exception e) {
+                // Rethrow so the pipeline leaves the file (and its checkpoint) in place for the next run.
                 log.error("Error while migrating claims for {}", payerkey, e);
+                throw e;
+            } finally {
+                this.checkpointJournal.close(checkpoint);
             }
         };
-        log.info("Before calling s3repository for {}", payerkey);
-
-        files.forEach(file -> {
-            this.s3Repository.processAndMoveFileFromRawBucket(file, processor, "deleted-members");
-        });
     }
 
-    private void executeDelete(final Long payerKey, final List<PayerMemberDTO> claims) {
-        log.info("Before Execute delete invoked");
-        final List<Long> memberKeys = claims.stream()
-                .map(PayerMemberDTO::getMemberKey)
-                .toList();
-        this.memberClaimsDeleteService.deleteMembers(payerKey, memberKeys);
-        log.info("After Execute delete invoked");
+    private void executeDelete(final DeleteJob job, final List<Long> memberKeys, final FileCheckpoint checkpoint) {
+        log.debug("Before Execute delete invoked, members={}", memberKeys.size());
+        this.memberClaimsDeleteService.deleteMembers(job, memberKeys, checkpoint);
+        log.debug("After Execute delete invoked");
     }
-    )
 }
@@ -0,0 +1,90 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * Date-window arithmetic of the range-delete fallback: month counts, the 12 -> 6 -> 3 -> 1 chunk
+ * ladder, and the adaptive walk that re-runs a window with smaller chunks when a chunk is too large.
+ * Kept free of driver types so it can be benchmarked on its own.
+ */
+public final class DateWindows {
+
+    private DateWindows() {
+    }
+
+    /**
+     * Deletes {@code [fromInclusive, toExclusive)} and returns how many dup rows went with it.
+     */
+    @FunctionalInterface
+    public interface RangeDelete {
+        int delete(LocalDate fromInclusive, LocalDate toExclusive);
+    }
+
+    @FunctionalInterface
+    public interface ShrinkListener {
+        void onShrink(int nextMonthsPerChunk, RuntimeException cause);
+    }
+
+    /**
+     * Chunk size a window was finally deleted with, and the dup rows deleted at that size.
+     */
+    public record Result(int monthsPerChunk, long dupRows) {
+    }
+
+    /**
+     * Walks the window in chunks of {@code monthsPerChunk}. When a chunk fails with an error that
+     * {@code shrinkOn} accepts, the whole window is run again with the next smaller chunk size
+     * (deletes are idempotent); other errors, or the error at 1-month chunks, are rethrown.
+     */
+    public static Result deleteAdaptive(LocalDate fromInclusive, LocalDate toExclusive, int monthsPerChunk,
+                                        RangeDelete rangeDelete,
+                                        Predicate<RuntimeException> shrinkOn,
+                                        ShrinkListener listener) {
+        int months = monthsPerChunk;
+        while (true) {
+            if (!fromInclusive.isBefore(toExclusive)) {
+                return new Result(months, 0);
+            }
+            try {
+                if (months >= monthsBetween(fromInclusive, toExclusive)) {
+                    return new Result(months, rangeDelete.delete(fromInclusive, toExclusive));
+                }
+                long dupRows = 0;
+                LocalDate cursor = fromInclusive;
+                while (cursor.isBefore(toExclusive)) {
+                    LocalDate next = min(cursor.plusMonths(months), toExclusive);
+                    dupRows += rangeDelete.delete(cursor, next);
+                    cursor = next;
+                }
+                return new Result(months, dupRows);
+            } catch (RuntimeException e) {
+                if (!shrinkOn.test(e)) {
+                    throw e;
+                }
+                int nextMonths = nextSmallerChunk(months);
+                if (nextMonths == months) {
+                    throw e;
+                }
+                listener.onShrink(nextMonths, e);
+                months = nextMonths;
+            }
+        }
+    }
+
+    public static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    public static int monthsBetween(LocalDate fromInclusive, LocalDate toExclusive) {
+        return (toExclusive.getYear() - fromInclusive.getYear()) * 12
+                + (toExclusive.getMonthValue() - fromInclusive.getMonthValue());
+    }
+
+    public static int nextSmallerChunk(int monthsPerChunk) {
+        if (monthsPerChunk > 6) return 6;
+        if (monthsPerChunk > 3) return 3;
+        if (monthsPerChunk > 1) return 1;
+        return 1;
+    }
+}
@@ -0,0 +1,71 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Local NDJSON file of members that still failed after retries.
+ *
+ * Each line carries {@code memberKey}, so the file can be fed back as a delete manifest to
+ * replay only the failures. The file is created on the first failure.
+ */
+@Slf4j
+public class DeadLetterWriter {
+
+    record DeadLetter(long payerKey, long memberKey, String error) {
+    }
+
+    private final Path path;
+
+    private final ObjectMapper objectMapper;
+
+    // Guarded by this.
+    private BufferedWriter writer;
+    private long count;
+
+    public DeadLetterWriter(Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    public synchronized void write(long payerKey, long memberKey, Throwable error) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.getParent());
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+            }
+            writer.write(objectMapper.writeValueAsString(new DeadLetter(payerKey, memberKey, String.valueOf(error))));
+            writer.newLine();
+            count++;
+        } catch (IOException e) {
+            // Never lose the member silently: at least the log has it.
+            log.error("Could not dead-letter payerKey={}, memberKey={}", payerKey, memberKey, e);
+        }
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close dead-letter file " + path, e);
+        }
+    }
+}
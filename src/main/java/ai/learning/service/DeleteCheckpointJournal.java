@@ -0,0 +1,361 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local append-only journal of completed delete units, one journal file per (payerKey, manifest file).
+ *
+ * Records are fixed-size: type (member done / window done), memberKey, window from/to as epoch days.
+ * Appends are buffered and written + fsynced in groups every {@code fsync-interval-ms}, so a crash
+ * loses at most the last interval, whose members are simply deleted again (deletes are idempotent).
+ * A truncated trailing record left by a crash is ignored on replay.
+ *
+ * Appends come from driver completion callbacks, so they never wait for the disk: they only fill
+ * a buffer under the journal's lock, and the flusher thread swaps the filled buffers out and
+ * writes and fsyncs them outside it.
+ *
+ * Jobs that run the same manifest file at the same time share its journal, so its records are
+ * written through one channel and each job skips the units the other finished. The journal is
+ * closed when the last of them closes it, and removed once the file has been archived and no job
+ * has it open any more.
+ */
+@Slf4j
+@Component
+public class DeleteCheckpointJournal {
+
+    private static final byte MEMBER_DONE = 1;
+    private static final byte WINDOW_DONE = 2;
+
+    // type + memberKey + from epoch day + to epoch day
+    private static final int RECORD_BYTES = 1 + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    // Open journals by path; holders are counted under the map's lock for the path.
+    private final Map<Path, JournalFile> openFiles = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+
+    @Autowired
+    public DeleteCheckpointJournal(@Value("${ntclaims.delete.checkpoint.enabled:true}") boolean enabled,
+                                   @Value("${ntclaims.delete.checkpoint.dir:${java.io.tmpdir}/claims-delete-checkpoints}") String directory,
+                                   @Value("${ntclaims.delete.checkpoint.fsync-interval-ms:200}") long fsyncIntervalMs) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "delete-checkpoint-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            this.flusher.scheduleWithFixedDelay(this::flushAll, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+            log.info("Delete checkpoint journal enabled; dir={}, fsyncIntervalMs={}", this.directory, fsyncIntervalMs);
+        }
+    }
+
+    /**
+     * Opens (and replays) the journal of one manifest file, or joins it if another job has it open.
+     * Every open must be paired with one {@link #close}.
+     */
+    public FileCheckpoint open(long payerKey, String fileKey) {
+        if (!enabled) {
+            return FileCheckpoint.NONE;
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open delete checkpoint for " + fileKey, e);
+        }
+        return openFiles.compute(journalPath(payerKey, fileKey), (path, open) -> {
+            if (open != null) {
+                open.holders++;
+                return open;
+            }
+            try {
+                return new JournalFile(path, flusher);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open delete checkpoint for " + fileKey, e);
+            }
+        });
+    }
+
+    /**
+     * Releases the caller's hold on the journal. The last holder flushes and closes it; it is kept on
+     * disk until {@link #complete} is called.
+     */
+    public void close(FileCheckpoint checkpoint) {
+        if (checkpoint instanceof JournalFile journal) {
+            openFiles.computeIfPresent(journal.path, (path, open) -> {
+                if (open != journal || --open.holders > 0) {
+                    return open;
+                }
+                open.close();
+                if (open.completed) {
+                    removeFile(path);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Removes the journal of a file whose deletes are finished and that has been archived. A journal
+     * another job still has open is removed when that job closes it.
+     */
+    public void complete(long payerKey, String fileKey) {
+        if (!enabled) {
+            return;
+        }
+        openFiles.compute(journalPath(payerKey, fileKey), (path, open) -> {
+            if (open != null) {
+                open.completed = true;
+            } else {
+                removeFile(path);
+            }
+            return open;
+        });
+    }
+
+    private static void removeFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not remove delete checkpoint {}: {}", path.getFileName(), e.getMessage());
+        }
+    }
+
+    private Path journalPath(long payerKey, String fileKey) {
+        // Keys may contain '/', keep the name readable and disambiguate with the key hash.
+        String safeKey = fileKey.replaceAll("[^A-Za-z0-9._-]", "_");
+        return directory.resolve(payerKey + "-" + Integer.toHexString(fileKey.hashCode()) + "-" + safeKey + ".ckpt");
+    }
+
+    private void flushAll() {
+        for (JournalFile journal : openFiles.values()) {
+            try {
+                journal.flush(true);
+            } catch (RuntimeException e) {
+                log.error("Delete checkpoint flush failed for {}", journal.path, e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        flushAll();
+    }
+
+    private record WindowRef(long memberKey, long fromEpochDay, long toEpochDay) {
+    }
+
+    private static final class JournalFile implements FileCheckpoint {
+
+        // Spare buffers kept for reuse; more are allocated if the disk falls behind.
+        private static final int MAX_FREE_BUFFERS = 2;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final Executor flusher;
+
+        // Guarded by the journal registry's lock for the path.
+        private int holders = 1;
+        private boolean completed;
+
+        // Guarded by this.
+        private final LongHashSet doneMembers = new LongHashSet();
+        private final Set<WindowRef> doneWindows = ConcurrentHashMap.newKeySet();
+        private ByteBuffer pending = newBuffer();
+        private final ArrayDeque<ByteBuffer> filled = new ArrayDeque<>();
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private boolean dirty;
+
+        // Held while writing, so buffers reach the file in the order they were filled. Appends
+        // never take it.
+        private final Object writeLock = new Object();
+
+        JournalFile(Path path, Executor flusher) throws IOException {
+            this.path = path;
+            this.flusher = flusher;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            replay();
+        }
+
+        private void replay() throws IOException {
+            long validBytes = (channel.size() / RECORD_BYTES) * RECORD_BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_BYTES);
+            long position = 0;
+            while (position < validBytes) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), validBytes - position));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) break;
+                }
+                buffer.flip();
+                position += buffer.remaining();
+                while (buffer.remaining() >= RECORD_BYTES) {
+                    byte type = buffer.get();
+                    long memberKey = buffer.getLong();
+                    int from = buffer.getInt();
+                    int to = buffer.getInt();
+                    if (type == MEMBER_DONE) {
+                        doneMembers.add(memberKey);
+                    } else if (type == WINDOW_DONE) {
+                        doneWindows.add(new WindowRef(memberKey, from, to));
+                    }
+                }
+            }
+            // Drop a torn record from a crash so new appends stay aligned.
+            channel.truncate(validBytes);
+            channel.position(validBytes);
+            if (validBytes > 0) {
+                log.info("Resuming from checkpoint {}; members done={}, windows done={}",
+                        path.getFileName(), doneMembers.size(), doneWindows.size());
+            }
+        }
+
+        @Override
+        public synchronized boolean isMemberDone(long memberKey) {
+            return doneMembers.contains(memberKey);
+        }
+
+        @Override
+        public synchronized void memberDone(long memberKey) {
+            if (doneMembers.add(memberKey)) {
+                append(MEMBER_DONE, memberKey, 0, 0);
+            }
+        }
+
+        @Override
+        public boolean isWindowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive) {
+            return doneWindows.contains(new WindowRef(memberKey, fromInclusive.toEpochDay(), toExclusive.toEpochDay()));
+        }
+
+        @Override
+        public synchronized void windowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive) {
+            if (doneWindows.add(new WindowRef(memberKey, fromInclusive.toEpochDay(), toExclusive.toEpochDay()))) {
+                append(WINDOW_DONE, memberKey, (int) fromInclusive.toEpochDay(), (int) toExclusive.toEpochDay());
+            }
+        }
+
+        // Called with the lock held.
+        private void append(byte type, long memberKey, int from, int to) {
+            pending.put(type).putLong(memberKey).putInt(from).putInt(to);
+            dirty = true;
+            if (pending.remaining() < RECORD_BYTES) {
+                filled.add(pending);
+                pending = free.isEmpty() ? newBuffer() : free.poll();
+                // Write it out now rather than at the next interval; fsync stays on the interval.
+                try {
+                    flusher.execute(() -> flushQuietly(false));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; close() writes it.
+                }
+            }
+        }
+
+        /**
+         * Writes the buffered records, and fsyncs them if asked. Only the buffer swap happens under
+         * the journal's lock; the write and fsync do not block appends.
+         */
+        void flush(boolean fsync) {
+            synchronized (writeLock) {
+                List<ByteBuffer> toWrite;
+                boolean force;
+                synchronized (this) {
+                    if (pending.position() > 0) {
+                        filled.add(pending);
+                        pending = free.isEmpty() ? newBuffer() : free.poll();
+                    }
+                    toWrite = new ArrayList<>(filled);
+                    filled.clear();
+                    force = fsync && dirty;
+                    if (force) {
+                        dirty = false;
+                    }
+                }
+                if (!channel.isOpen()) {
+                    // Closed; records arriving after close() are dropped, they are only redone.
+                    return;
+                }
+                try {
+                    for (ByteBuffer buffer : toWrite) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                    if (force) {
+                        channel.force(false);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Delete checkpoint write failed: " + path, e);
+                } finally {
+                    recycle(toWrite);
+                }
+            }
+        }
+
+        private void flushQuietly(boolean fsync) {
+            try {
+                flush(fsync);
+            } catch (RuntimeException e) {
+                log.error("Delete checkpoint flush failed for {}", path, e);
+            }
+        }
+
+        private synchronized void recycle(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                if (free.size() >= MAX_FREE_BUFFERS) {
+                    return;
+                }
+                buffer.clear();
+                free.add(buffer);
+            }
+        }
+
+        void close() {
+            flush(true);
+            synchronized (writeLock) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Delete checkpoint close failed: " + path, e);
+                }
+            }
+        }
+
+        private static ByteBuffer newBuffer() {
+            return ByteBuffer.allocate(BUFFER_RECORDS * RECORD_BYTES);
+        }
+    }
+}
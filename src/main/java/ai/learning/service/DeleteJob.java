@@ -0,0 +1,219 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One delete run for a payer, shared by all of its files: identity and status, the retry budget,
+ * the dead-letter output for members that could not be deleted, and live statistics.
+ */
+public class DeleteJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private final String id;
+
+    private final long payerKey;
+
+    private final List<String> files;
+
+    private final String prefix;
+
+    private final long retryBudget;
+
+    private final AtomicLong retriesLeft;
+
+    private final DeadLetterWriter deadLetters;
+
+    private final Instant submittedAt = Instant.now();
+
+    private final LongAdder membersDeleted = new LongAdder();
+    private final LongAdder membersSkipped = new LongAdder();
+    private final LongAdder rangeFallbacks = new LongAdder();
+    private final LongAdder dupRowsDeleted = new LongAdder();
+    private final LongAdder filesDone = new LongAdder();
+    private final AtomicInteger filesTotal = new AtomicInteger();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String failure;
+    private volatile boolean cancelled;
+    private volatile Future<?> execution;
+
+    public DeleteJob(String id, long payerKey, List<String> files, String prefix,
+                     long retryBudget, DeadLetterWriter deadLetters) {
+        this.id = id;
+        this.payerKey = payerKey;
+        this.files = (files == null) ? List.of() : List.copyOf(files);
+        this.filesTotal.set(this.files.size());
+        this.prefix = prefix;
+        this.retryBudget = retryBudget;
+        this.retriesLeft = new AtomicLong(retryBudget);
+        this.deadLetters = deadLetters;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public long payerKey() {
+        return payerKey;
+    }
+
+    public List<String> files() {
+        return files;
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    /**
+     * Takes one retry from the job's budget; false once the budget is spent.
+     */
+    public boolean tryConsumeRetry() {
+        return retriesLeft.getAndUpdate(left -> left > 0 ? left - 1 : 0) > 0;
+    }
+
+    public void deadLetter(long memberKey, Throwable error) {
+        deadLetters.write(payerKey, memberKey, error);
+    }
+
+    public DeadLetterWriter deadLetters() {
+        return deadLetters;
+    }
+
+    // --- lifecycle
+
+    public void attach(Future<?> execution) {
+        this.execution = execution;
+    }
+
+    /**
+     * Moves a queued job to RUNNING; false if it was cancelled while it waited.
+     */
+    public synchronized boolean markRunning() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        this.startedAt = Instant.now();
+        this.status = Status.RUNNING;
+        return true;
+    }
+
+    public synchronized void markFinished(Status status, String failure) {
+        this.finishedAt = Instant.now();
+        this.failure = failure;
+        this.status = cancelled ? Status.CANCELLED : status;
+    }
+
+    /**
+     * Stops the job. A queued job is CANCELLED right away and never starts. A running job starts
+     * no new members or files; members already sent and files already open finish (the job
+     * thread is not interrupted, so its cleanup still runs), and files left unfinished keep their
+     * checkpoint for a later run. The job is CANCELLED once that work is done.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        synchronized (this) {
+            if (status == Status.QUEUED) {
+                this.finishedAt = Instant.now();
+                this.status = Status.CANCELLED;
+            }
+        }
+        Future<?> queued = this.execution;
+        if (queued != null) {
+            // Only drops the job from the queue; a running job stops through the cancelled flag.
+            queued.cancel(false);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * When the job succeeded, failed or was cancelled; null while it is queued or running.
+     */
+    public Instant finishedAt() {
+        return finishedAt;
+    }
+
+    // --- statistics
+
+    public void memberDeleted() {
+        membersDeleted.increment();
+    }
+
+    public void memberSkipped() {
+        membersSkipped.increment();
+    }
+
+    public void rangeFallback() {
+        rangeFallbacks.increment();
+    }
+
+    public void dupRowsDeleted(long rows) {
+        dupRowsDeleted.add(rows);
+    }
+
+    /**
+     * Counts a file of the job's prefix as it is listed; the total grows while listing runs.
+     */
+    public void fileListed() {
+        filesTotal.incrementAndGet();
+    }
+
+    public void fileDone() {
+        filesDone.increment();
+    }
+
+    public Snapshot snapshot(double currentRateLimit, int maxInFlightPerPayer) {
+        Instant start = startedAt;
+        Instant end = (finishedAt != null) ? finishedAt : Instant.now();
+        long deleted = membersDeleted.sum();
+        double seconds = (start == null) ? 0 : Duration.between(start, end).toMillis() / 1000.0;
+        return new Snapshot(id, payerKey, status, submittedAt, start, finishedAt, failure,
+                filesTotal.get(), filesDone.sum(),
+                deleted, membersSkipped.sum(), deadLetters.count(),
+                seconds > 0 ? deleted / seconds : 0,
+                rangeFallbacks.sum(), dupRowsDeleted.sum(),
+                retryBudget - retriesLeft.get(),
+                currentRateLimit, maxInFlightPerPayer);
+    }
+
+    /**
+     * Point-in-time view of a job, as served by the job API.
+     */
+    public record Snapshot(String id,
+                           long payerKey,
+                           Status status,
+                           Instant submittedAt,
+                           Instant startedAt,
+                           Instant finishedAt,
+                           String failure,
+                           int filesTotal,
+                           long filesDone,
+                           long membersDeleted,
+                           long membersSkipped,
+                           long membersDeadLettered,
+                           double membersPerSecond,
+                           long rangeFallbacks,
+                           long dupRowsDeleted,
+                           long retries,
+                           double rateLimitPerSecond,
+                           int maxInFlightPerPayer) {
+    }
+}
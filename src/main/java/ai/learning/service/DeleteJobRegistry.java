@@ -0,0 +1,17 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Registry of submitted delete jobs. The in-memory implementation is the default; a persistent
+ * implementation can replace it as another bean.
+ */
+public interface DeleteJobRegistry {
+
+    void register(DeleteJob job);
+
+    Optional<DeleteJob> find(String id);
+
+    Collection<DeleteJob> list();
+}
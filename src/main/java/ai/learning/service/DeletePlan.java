@@ -0,0 +1,51 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Dry-run estimate of a payer's delete, from its manifests and a sample of its partitions.
+ * Member and cost totals are extrapolated from the sample to every member still to delete.
+ *
+ * @param membersInManifests        member keys read, repeats included
+ * @param distinctMembers           distinct member keys
+ * @param alreadyDeleted            distinct members the {@link DeletedMemberIndex} will skip
+ * @param membersToDelete           distinct members that will be deleted
+ * @param sampledMembers            members whose partitions were read
+ * @param sampleErrors              sampled members whose partitions could not be read
+ * @param emptyMembers              members without claims or dup rows
+ * @param fastPathMembers           members deleted by the partition delete
+ * @param windowedMembers           members that need date-window range deletes
+ * @param statements                CQL statements, failed attempts included
+ * @param writeUnits                write capacity units consumed by the deletes
+ * @param tombstones                partition, range and row tombstones written
+ * @param statementsPerSecond       statement rate the duration is estimated at
+ * @param writeUnitsPerSecond       write capacity the duration is estimated at, if given
+ * @param estimatedDuration         wall-clock time at those rates
+ * @param sampleLargestClaimRows    largest claims partition in the sample
+ * @param sampleWindowsByChunkMonths sampled yearly windows by the chunk size, in months, they complete at
+ * @param reportPath                where this plan was written
+ */
+public record DeletePlan(long payerKey,
+                         Instant createdAt,
+                         int files,
+                         long membersInManifests,
+                         long distinctMembers,
+                         long alreadyDeleted,
+                         long membersToDelete,
+                         int sampledMembers,
+                         int sampleErrors,
+                         long emptyMembers,
+                         long fastPathMembers,
+                         long windowedMembers,
+                         long statements,
+                         long writeUnits,
+                         long tombstones,
+                         double statementsPerSecond,
+                         Double writeUnitsPerSecond,
+                         Duration estimatedDuration,
+                         long sampleLargestClaimRows,
+                         Map<Integer, Long> sampleWindowsByChunkMonths,
+                         String reportPath) {
+}
@@ -0,0 +1,405 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nontrauma.migration.migrationutil.repository.AdaptiveRateLimiter;
+import com.nontrauma.migration.migrationutil.repository.ClaimsStore;
+import com.nontrauma.migration.migrationutil.repository.ManifestStore;
+import com.nontrauma.migration.migrationutil.repository.PartitionProfile;
+import com.nontrauma.migration.migrationutil.repository.ServiceDateSpan;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dry run of a payer's delete: reads its manifests, samples member partitions with parallel
+ * read-only scans, and estimates the statements, write units, tombstones and time the delete will
+ * take, so capacity can be raised ahead of it. Nothing is deleted and no manifest is moved.
+ *
+ * Members are counted once across files, and members already in the {@link DeletedMemberIndex}
+ * are left out. Up to {@code sample-size} of the remaining members are drawn uniformly (reservoir
+ * sampling) and profiled, {@code parallelism} at a time, through the rate limiter the deletes use.
+ *
+ * Each sampled member is costed the way {@link MemberClaimsDeleteService} will delete it: a
+ * partition delete when both partitions are within {@code range-delete-row-limit} rows, otherwise
+ * the failed attempt, the span probes and the yearly windows walked by {@link DateWindows} against
+ * the member's rows per month. Windows start at the chunk sizes the {@link RangeDeletePlanner} has
+ * learned from real deletes and adapt on a scratch copy of it, so a plan leaves the planner (and
+ * every later job) untouched: planning has no side effects besides its report.
+ *
+ * Plans run on their own pool, {@code max-concurrent} at a time, not on the calling thread. The
+ * plan is written as JSON under {@code ntclaims.delete.plan.dir}.
+ */
+@Slf4j
+@Service
+public class DeletePlanService {
+
+    // Thrown by the simulated range delete; no stack trace, it is only control flow.
+    private static final RuntimeException CHUNK_TOO_LARGE =
+            new RuntimeException("Range delete over the row limit (simulated)", null, false, false) {
+            };
+
+    private static final int PARSE_CHUNK_SIZE = 4096;
+
+    private final ManifestStore manifestStore;
+
+    private final ClaimsStore claimsStore;
+
+    private final DeletedMemberIndex deletedMembers;
+
+    private final RangeDeletePlanner rangeDeletePlanner;
+
+    private final AdaptiveRateLimiter rateLimiter;
+
+    private final ObjectMapper objectMapper;
+
+    private final MemberKeyNdjsonParser memberKeyParser;
+
+    private final int defaultSampleSize;
+    private final int parallelism;
+    private final int rangeDeleteRowLimit;
+    private final double writeUnitsPerRow;
+    private final int rangeSelectPageSize;
+    private final int dupBatchMaxStatements;
+    private final Path directory;
+
+    private final ExecutorService planExecutor;
+
+    @Autowired
+    public DeletePlanService(ManifestStore manifestStore,
+                             ClaimsStore claimsStore,
+                             DeletedMemberIndex deletedMembers,
+                             RangeDeletePlanner rangeDeletePlanner,
+                             AdaptiveRateLimiter rateLimiter,
+                             ObjectMapper objectMapper,
+                             @Value("${ntclaims.delete.plan.sample-size:2000}") int defaultSampleSize,
+                             @Value("${ntclaims.delete.plan.parallelism:32}") int parallelism,
+                             @Value("${ntclaims.delete.plan.range-delete-row-limit:1000}") int rangeDeleteRowLimit,
+                             @Value("${ntclaims.delete.plan.write-units-per-row:1.0}") double writeUnitsPerRow,
+                             @Value("${ntclaims.delete.range.page-size:500}") int rangeSelectPageSize,
+                             @Value("${ntclaims.delete.dup-batch.max-statements:30}") int dupBatchMaxStatements,
+                             @Value("${ntclaims.delete.plan.dir:${java.io.tmpdir}/claims-delete-plans}") String directory,
+                             @Value("${ntclaims.delete.plan.max-concurrent:1}") int maxConcurrentPlans) {
+        this.manifestStore = manifestStore;
+        this.claimsStore = claimsStore;
+        this.deletedMembers = deletedMembers;
+        this.rangeDeletePlanner = rangeDeletePlanner;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.memberKeyParser = new MemberKeyNdjsonParser(objectMapper.getFactory());
+        this.defaultSampleSize = defaultSampleSize;
+        this.parallelism = parallelism;
+        this.rangeDeleteRowLimit = rangeDeleteRowLimit;
+        this.writeUnitsPerRow = writeUnitsPerRow;
+        this.rangeSelectPageSize = rangeSelectPageSize;
+        this.dupBatchMaxStatements = dupBatchMaxStatements;
+        this.directory = Path.of(directory);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.planExecutor = Executors.newFixedThreadPool(maxConcurrentPlans, r -> {
+            Thread t = new Thread(r, "claims-delete-plan-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        planExecutor.shutdownNow();
+    }
+
+    /**
+     * Plans the delete of the manifests in {@code files}, or listed under {@code prefix}, on the
+     * plan pool. The future completes with the plan once its report is written.
+     *
+     * @param sampleSize          members to profile, or null for {@code sample-size}
+     * @param statementsPerSecond rate to estimate the duration at, or null for the current rate limit
+     * @param writeUnitsPerSecond provisioned write capacity, or null to estimate by statement rate only
+     */
+    public CompletableFuture<DeletePlan> plan(long payerKey, List<String> files, String prefix,
+                                              Integer sampleSize, Double statementsPerSecond, Double writeUnitsPerSecond) {
+        return CompletableFuture.supplyAsync(
+                () -> planNow(payerKey, files, prefix, sampleSize, statementsPerSecond, writeUnitsPerSecond),
+                planExecutor);
+    }
+
+    private DeletePlan planNow(long payerKey, List<String> files, String prefix,
+                               Integer sampleSize, Double statementsPerSecond, Double writeUnitsPerSecond) {
+        Instant createdAt = Instant.now();
+        List<String> manifests = (files != null && !files.isEmpty()) ? files : manifestStore.listManifests(prefix);
+        Members members = readMembers(payerKey, manifests, (sampleSize != null) ? sampleSize : defaultSampleSize);
+        log.info("Delete plan for payerKey={}: files={}, members={}, distinct={}, alreadyDeleted={}, sampling {}",
+                payerKey, manifests.size(), members.total, members.distinct.getLongCardinality(),
+                members.alreadyDeleted, members.sampleLength());
+
+        Cost sample = profileSample(payerKey, members, rangeDeletePlanner.scratchCopy());
+        int profiled = members.sampleLength() - sample.errors;
+        double scale = (profiled == 0) ? 0 : (double) members.toDelete / profiled;
+        long statements = Math.round(sample.statements * scale);
+        long writeUnits = Math.round(sample.writeUnits * scale);
+        double rate = (statementsPerSecond != null) ? statementsPerSecond : rateLimiter.getPermitsPerSecond();
+        double seconds = statements / rate;
+        if (writeUnitsPerSecond != null && writeUnitsPerSecond > 0) {
+            seconds = Math.max(seconds, writeUnits / writeUnitsPerSecond);
+        }
+
+        Path reportPath = directory.resolve(payerKey + "-" + createdAt.toEpochMilli() + ".json");
+        DeletePlan plan = new DeletePlan(payerKey, createdAt, manifests.size(),
+                members.total, members.distinct.getLongCardinality(), members.alreadyDeleted, members.toDelete,
+                members.sampleLength(), sample.errors,
+                Math.round(sample.emptyMembers * scale),
+                Math.round(sample.fastPathMembers * scale),
+                Math.round(sample.windowedMembers * scale),
+                statements, writeUnits, Math.round(sample.tombstones * scale),
+                rate, writeUnitsPerSecond, Duration.ofMillis(Math.round(seconds * 1000)),
+                sample.largestClaimRows, sample.windowsByChunkMonths, reportPath.toString());
+        writeReport(reportPath, plan);
+        log.info("Delete plan for payerKey={}: fastPath={}, windowed={}, statements={}, writeUnits={}, duration={}; report at {}",
+                payerKey, plan.fastPathMembers(), plan.windowedMembers(), statements, writeUnits,
+                plan.estimatedDuration(), reportPath);
+        return plan;
+    }
+
+    /**
+     * Distinct members of the manifests, and a uniform sample of the ones still to delete.
+     */
+    private Members readMembers(long payerKey, List<String> manifests, int sampleSize) {
+        Members members = new Members(sampleSize, new Random(payerKey));
+        for (String key : manifests) {
+            ManifestStore.Manifest manifest = manifestStore.openManifest(key).join();
+            try (InputStream in = manifest.body()) {
+                memberKeyParser.parse(in, PARSE_CHUNK_SIZE, (memberKeys, length) -> {
+                    for (int i = 0; i < length; i++) {
+                        members.offer(payerKey, memberKeys[i], deletedMembers);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read manifest " + key, e);
+            }
+        }
+        return members;
+    }
+
+    private Cost profileSample(long payerKey, Members members, RangeDeletePlanner planner) {
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<Void>> profiles = new ArrayList<>(members.sampleLength());
+        Cost cost = new Cost();
+        for (int i = 0; i < members.sampleLength(); i++) {
+            long memberKey = members.sample[i];
+            acquire(permits);
+            profiles.add(claimsStore.profilePartitionAsync(payerKey, memberKey)
+                    .toCompletableFuture()
+                    .handle((profile, error) -> {
+                        permits.release();
+                        if (error != null) {
+                            log.warn("Could not profile payerKey={}, memberKey={}: {}",
+                                    payerKey, memberKey, MemberDeleteExecutor.unwrap(error).toString());
+                            cost.error();
+                        } else {
+                            estimate(payerKey, profile, planner, cost);
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(profiles.toArray(CompletableFuture[]::new)).join();
+        return cost;
+    }
+
+    /**
+     * Adds the cost of deleting one member to {@code cost}, following the delete path it will take.
+     * Window chunk sizes are learned on {@code planner}, the plan's scratch copy.
+     */
+    private void estimate(long payerKey, PartitionProfile profile, RangeDeletePlanner planner, Cost cost) {
+        if (profile.claimRows() <= rangeDeleteRowLimit && profile.dupRows() <= rangeDeleteRowLimit) {
+            // Both partition deletes: one partition tombstone each.
+            cost.fastPath(profile, 2, (profile.claimRows() + profile.dupRows()) * writeUnitsPerRow, 2);
+            return;
+        }
+        // The rejected claims partition delete, then the first/last servicebegindate probes.
+        WindowedCost member = new WindowedCost(profile);
+        member.statements = 3;
+        if (!profile.claimRowsPerMonth().isEmpty()) {
+            YearMonth last = profile.claimRowsPerMonth().lastKey();
+            ServiceDateSpan span = new ServiceDateSpan(profile.claimRowsPerMonth().firstKey().atDay(1), last.atEndOfMonth());
+            RangeDeletePlanner.SizeClass sizeClass = RangeDeletePlanner.SizeClass.of(span);
+            LocalDate endExclusive = last.plusMonths(1).atDay(1);
+            LocalDate from = span.first().withDayOfYear(1);
+            while (from.isBefore(endExclusive)) {
+                LocalDate to = DateWindows.min(from.plusYears(1), endExclusive);
+                int startMonths = planner.initialChunkMonths(payerKey, sizeClass);
+                DateWindows.Result window = DateWindows.deleteAdaptive(from, to, startMonths,
+                        member::deleteRange, e -> e == CHUNK_TOO_LARGE, (nextMonths, e) -> {
+                        });
+                planner.recordWindow(payerKey, sizeClass, startMonths, window.monthsPerChunk());
+                member.windows.merge(window.monthsPerChunk(), 1L, Long::sum);
+                from = to;
+            }
+        }
+        cost.windowed(member);
+    }
+
+    private void writeReport(Path reportPath, DeletePlan plan) {
+        try {
+            Files.createDirectories(reportPath.getParent());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(reportPath.toFile(), plan);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write delete plan " + reportPath, e);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting to profile the next member");
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Manifest members: distinct keys, repeats, and a reservoir sample of the members to delete.
+     */
+    private static final class Members {
+
+        final Roaring64Bitmap distinct = new Roaring64Bitmap();
+        final long[] sample;
+        final Random random;
+        long total;
+        long alreadyDeleted;
+        long toDelete;
+
+        Members(int sampleSize, Random random) {
+            this.sample = new long[Math.max(sampleSize, 0)];
+            this.random = random;
+        }
+
+        void offer(long payerKey, long memberKey, DeletedMemberIndex deletedMembers) {
+            total++;
+            if (distinct.contains(memberKey)) {
+                return;
+            }
+            distinct.addLong(memberKey);
+            if (deletedMembers.contains(payerKey, memberKey)) {
+                alreadyDeleted++;
+                return;
+            }
+            if (toDelete < sample.length) {
+                sample[(int) toDelete] = memberKey;
+            } else if (sample.length > 0) {
+                long slot = random.nextLong(toDelete + 1);
+                if (slot < sample.length) {
+                    sample[(int) slot] = memberKey;
+                }
+            }
+            toDelete++;
+        }
+
+        int sampleLength() {
+            return (int) Math.min(toDelete, sample.length);
+        }
+    }
+
+    /**
+     * Statements, write units and tombstones of one windowed member, from its rows per month.
+     * Each chunk costs what the pipelined range delete sends: the claim-number SELECT pages, the
+     * dup batches, then the claims range delete; a rejected chunk still pays for its SELECT and dups.
+     */
+    private final class WindowedCost {
+
+        final PartitionProfile profile;
+        final Map<Integer, Long> windows = new TreeMap<>();
+        long statements;
+        double writeUnits;
+        long tombstones;
+
+        WindowedCost(PartitionProfile profile) {
+            this.profile = profile;
+        }
+
+        int deleteRange(LocalDate fromInclusive, LocalDate toExclusive) {
+            long rows = profile.claimRows(fromInclusive, toExclusive);
+            double share = (profile.claimRows() == 0) ? 0 : (double) rows / profile.claimRows();
+            long claimNumbers = Math.round(profile.claimNumbers() * share);
+            long dupRows = Math.round(profile.dupRows() * share);
+
+            statements += Math.max(1, ceilDiv(rows, rangeSelectPageSize)) + ceilDiv(claimNumbers, dupBatchMaxStatements) + 1;
+            writeUnits += dupRows * writeUnitsPerRow;
+            tombstones += claimNumbers;
+            if (rows > rangeDeleteRowLimit) {
+                throw CHUNK_TOO_LARGE;
+            }
+            writeUnits += rows * writeUnitsPerRow;
+            tombstones++;
+            return (int) claimNumbers;
+        }
+    }
+
+    /**
+     * Totals over the sample. Updated from driver callback threads.
+     */
+    private static final class Cost {
+
+        long emptyMembers;
+        long fastPathMembers;
+        long windowedMembers;
+        int errors;
+        long statements;
+        double writeUnits;
+        long tombstones;
+        long largestClaimRows;
+        final Map<Integer, Long> windowsByChunkMonths = new TreeMap<>();
+
+        synchronized void fastPath(PartitionProfile profile, long statements, double writeUnits, long tombstones) {
+            largestClaimRows = Math.max(largestClaimRows, profile.claimRows());
+            if (profile.isEmpty()) {
+                emptyMembers++;
+            } else {
+                fastPathMembers++;
+            }
+            add(statements, writeUnits, tombstones);
+        }
+
+        synchronized void windowed(WindowedCost member) {
+            windowedMembers++;
+            largestClaimRows = Math.max(largestClaimRows, member.profile.claimRows());
+            member.windows.forEach((months, count) -> windowsByChunkMonths.merge(months, count, Long::sum));
+            add(member.statements, member.writeUnits, member.tombstones);
+        }
+
+        synchronized void error() {
+            errors++;
+        }
+
+        private void add(long statements, double writeUnits, long tombstones) {
+            this.statements += statements;
+            this.writeUnits += writeUnits;
+            this.tombstones += tombstones;
+        }
+    }
+}
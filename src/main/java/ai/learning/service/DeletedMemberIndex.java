@@ -0,0 +1,326 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run-wide record of the members already deleted, per payer, so that members repeated across
+ * manifest files and reruns are skipped instead of deleted again.
+ *
+ * Keys are held in a compressed {@link Roaring64Bitmap} per payer; tens of millions of member keys
+ * take a few tens of MB. A payer's set is loaded from {@code dir/<payerKey>.members} on first use and
+ * written back (to a temp file, then renamed) every {@code snapshot-interval-ms} while it has changed,
+ * when a job ends and at shutdown. A crash loses at most the last interval, whose members are simply
+ * deleted again.
+ *
+ * Unlike {@link DeleteCheckpointJournal}, which is scoped to one manifest file, this set outlives
+ * jobs and restarts. It expires {@code ttl-hours} after the payer's first recorded member (checked on
+ * load and at every snapshot), so members reloaded later are eventually deleted again; call
+ * {@link #forget} to reset it sooner after a payer's claims were loaded again.
+ */
+@Slf4j
+@Component
+public class DeletedMemberIndex {
+
+    // "NTDM" + format version + creation time (epoch ms), ahead of the serialized bitmap.
+    private static final int MAGIC = 0x4E54444D;
+    private static final int VERSION = 2;
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    // 0 keeps a set until it is forgotten.
+    private final long ttlMillis;
+
+    private final Map<Long, PayerMembers> payers = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService snapshotter;
+
+    @Autowired
+    public DeletedMemberIndex(@Value("${ntclaims.delete.dedup.enabled:true}") boolean enabled,
+                              @Value("${ntclaims.delete.dedup.dir:${java.io.tmpdir}/claims-delete-dedup}") String directory,
+                              @Value("${ntclaims.delete.dedup.snapshot-interval-ms:60000}") long snapshotIntervalMs,
+                              @Value("${ntclaims.delete.dedup.ttl-hours:168}") long ttlHours) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.ttlMillis = TimeUnit.HOURS.toMillis(Math.max(0, ttlHours));
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deleted-member-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        if (enabled) {
+            this.snapshotter.scheduleWithFixedDelay(this::persistAll, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+            log.info("Deleted member index enabled; dir={}, snapshotIntervalMs={}, ttlHours={}",
+                    this.directory, snapshotIntervalMs, ttlHours);
+        }
+    }
+
+    public boolean contains(long payerKey, long memberKey) {
+        return enabled && members(payerKey).contains(memberKey);
+    }
+
+    /**
+     * Records a member whose claims and dup rows are fully deleted.
+     */
+    public void add(long payerKey, long memberKey) {
+        if (enabled) {
+            members(payerKey).add(memberKey);
+        }
+    }
+
+    /**
+     * Number of members recorded for the payer. Only reads: a set that is not in memory is counted
+     * from its snapshot, which is not kept loaded.
+     */
+    public long size(long payerKey) {
+        if (!enabled) {
+            return 0;
+        }
+        PayerMembers members = payers.get(payerKey);
+        if (members != null) {
+            return members.size();
+        }
+        Roaring64Bitmap keys = new Roaring64Bitmap();
+        try {
+            PayerMembers.read(path(payerKey), ttlMillis, keys);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable deleted member index {}: {}", path(payerKey), e.getMessage());
+            return 0;
+        }
+        return keys.getLongCardinality();
+    }
+
+    /**
+     * Writes the payer's set to disk now if it changed since the last snapshot.
+     */
+    public void persist(long payerKey) {
+        PayerMembers members = payers.get(payerKey);
+        if (members != null) {
+            members.persist();
+        }
+    }
+
+    /**
+     * Drops the payer's set, in memory and on disk, so every member is deleted again.
+     */
+    public void forget(long payerKey) {
+        if (!enabled) {
+            return;
+        }
+        long[] forgotten = {0};
+        // Under the map's lock for the key, so no job reloads the file before it is gone.
+        payers.compute(payerKey, (key, current) -> {
+            if (current == null) {
+                deleteFile(path(key));
+            } else {
+                forgotten[0] = current.discard();
+            }
+            return null;
+        });
+        log.info("Forgot {} deleted member(s) of payerKey={}", forgotten[0], payerKey);
+    }
+
+    private PayerMembers members(long payerKey) {
+        return payers.computeIfAbsent(payerKey, key -> new PayerMembers(path(key), ttlMillis));
+    }
+
+    private Path path(long payerKey) {
+        return directory.resolve(payerKey + ".members");
+    }
+
+    private void persistAll() {
+        for (Map.Entry<Long, PayerMembers> entry : payers.entrySet()) {
+            PayerMembers members = entry.getValue();
+            try {
+                if (members.isExpired(ttlMillis)) {
+                    expire(entry.getKey(), members);
+                } else {
+                    members.persist();
+                }
+            } catch (RuntimeException e) {
+                log.error("Deleted member snapshot failed for {}", members.path, e);
+            }
+        }
+    }
+
+    private void expire(long payerKey, PayerMembers expired) {
+        payers.compute(payerKey, (key, current) -> {
+            if (current != expired) {
+                return current;
+            }
+            long count = current.discard();
+            log.info("Expired {} deleted member(s) of payerKey={}", count, payerKey);
+            return null;
+        });
+    }
+
+    private static void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot remove deleted member index " + path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshotter.shutdown();
+        persistAll();
+    }
+
+    private static final class PayerMembers {
+
+        private final Path path;
+
+        // Serializes snapshots, so the timer and a job ending don't write the same temp file, and
+        // orders them against discard. Guards discarded.
+        private final Object persistLock = new Object();
+
+        // Guarded by this.
+        private final Roaring64Bitmap keys;
+        private long createdAtMillis;
+        private boolean dirty;
+
+        // Set once the set is forgotten or expired; a snapshot still running must not write it back.
+        private boolean discarded;
+
+        PayerMembers(Path path, long ttlMillis) {
+            this.path = path;
+            this.keys = new Roaring64Bitmap();
+            this.createdAtMillis = System.currentTimeMillis();
+            load(ttlMillis);
+        }
+
+        private void load(long ttlMillis) {
+            try {
+                long createdAt = read(path, ttlMillis, keys);
+                if (createdAt >= 0) {
+                    createdAtMillis = createdAt;
+                    log.info("Loaded {} deleted member(s) from {}", keys.getLongCardinality(), path.getFileName());
+                }
+            } catch (IOException e) {
+                // Starting empty only costs repeated deletes, which are idempotent.
+                log.warn("Ignoring unreadable deleted member index {}: {}", path, e.getMessage());
+                keys.clear();
+            }
+        }
+
+        /**
+         * Reads the snapshot at {@code path} into {@code keys} and returns its creation time, or -1
+         * (leaving {@code keys} untouched) if there is none or it has expired.
+         */
+        static long read(Path path, long ttlMillis, Roaring64Bitmap keys) throws IOException {
+            if (!Files.exists(path)) {
+                return -1;
+            }
+            try (InputStream file = Files.newInputStream(path);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Not a deleted member index");
+                }
+                long createdAt = in.readLong();
+                if (ttlMillis > 0 && System.currentTimeMillis() - createdAt >= ttlMillis) {
+                    log.info("Ignoring expired deleted member index {}", path.getFileName());
+                    return -1;
+                }
+                keys.deserialize(in);
+                return createdAt;
+            }
+        }
+
+        synchronized boolean isExpired(long ttlMillis) {
+            return ttlMillis > 0 && System.currentTimeMillis() - createdAtMillis >= ttlMillis;
+        }
+
+        /**
+         * Stops snapshots for good and removes the file, after any snapshot already writing it.
+         * Returns the number of members dropped.
+         */
+        long discard() {
+            synchronized (persistLock) {
+                discarded = true;
+                deleteFile(path);
+                return size();
+            }
+        }
+
+        synchronized boolean contains(long memberKey) {
+            return keys.contains(memberKey);
+        }
+
+        synchronized void add(long memberKey) {
+            if (!keys.contains(memberKey)) {
+                keys.addLong(memberKey);
+                dirty = true;
+            }
+        }
+
+        synchronized long size() {
+            return keys.getLongCardinality();
+        }
+
+        void persist() {
+            synchronized (persistLock) {
+                if (discarded) {
+                    return;
+                }
+                byte[] snapshot;
+                long count;
+                synchronized (this) {
+                    if (!dirty) {
+                        return;
+                    }
+                    // Serialize in memory under the lock; the slower disk write happens outside it.
+                    keys.runOptimize();
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8,
+                            keys.serializedSizeInBytes() + 2L * Integer.BYTES + Long.BYTES));
+                    try (DataOutputStream out = new DataOutputStream(bytes)) {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeLong(createdAtMillis);
+                        keys.serialize(out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Cannot serialize deleted member index " + path, e);
+                    }
+                    snapshot = bytes.toByteArray();
+                    count = keys.getLongCardinality();
+                    dirty = false;
+                }
+                try {
+                    Files.createDirectories(path.getParent());
+                    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                    Files.write(temp, snapshot);
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    log.debug("Saved {} deleted member(s) ({} bytes) to {}", count, snapshot.length, path.getFileName());
+                } catch (IOException e) {
+                    synchronized (this) {
+                        dirty = true;
+                    }
+                    throw new UncheckedIOException("Cannot write deleted member index " + path, e);
+                }
+            }
+        }
+    }
+}
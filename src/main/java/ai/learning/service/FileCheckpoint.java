@@ -0,0 +1,41 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import java.time.LocalDate;
+
+/**
+ * Completed delete units of one manifest file, used to skip work when the file is re-run.
+ * Implementations must be safe to call from driver callback threads.
+ */
+public interface FileCheckpoint {
+
+    /**
+     * Checkpoint that remembers nothing (checkpointing disabled, or callers without a file).
+     */
+    FileCheckpoint NONE = new FileCheckpoint() {
+        @Override
+        public boolean isMemberDone(long memberKey) {
+            return false;
+        }
+
+        @Override
+        public void memberDone(long memberKey) {
+        }
+
+        @Override
+        public boolean isWindowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive) {
+            return false;
+        }
+
+        @Override
+        public void windowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive) {
+        }
+    };
+
+    boolean isMemberDone(long memberKey);
+
+    void memberDone(long memberKey);
+
+    boolean isWindowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive);
+
+    void windowDone(long memberKey, LocalDate fromInclusive, LocalDate toExclusive);
+}
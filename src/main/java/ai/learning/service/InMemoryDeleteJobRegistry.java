@@ -0,0 +1,69 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps queued and running jobs for as long as they run, and finished jobs for
+ * {@code retention-hours} after they finished, at most {@code max-finished} of them (the oldest go
+ * first). Eviction happens as jobs are registered and looked up.
+ */
+@Component
+public class InMemoryDeleteJobRegistry implements DeleteJobRegistry {
+
+    private final ConcurrentMap<String, DeleteJob> jobs = new ConcurrentHashMap<>();
+
+    private final long retentionMillis;
+
+    private final int maxFinishedJobs;
+
+    @Autowired
+    public InMemoryDeleteJobRegistry(@Value("${ntclaims.delete.jobs.retention-hours:24}") long retentionHours,
+                                     @Value("${ntclaims.delete.jobs.max-finished:500}") int maxFinishedJobs) {
+        this.retentionMillis = TimeUnit.HOURS.toMillis(Math.max(0, retentionHours));
+        this.maxFinishedJobs = Math.max(0, maxFinishedJobs);
+    }
+
+    @Override
+    public void register(DeleteJob job) {
+        jobs.put(job.id(), job);
+        evictFinished();
+    }
+
+    @Override
+    public Optional<DeleteJob> find(String id) {
+        evictFinished();
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @Override
+    public Collection<DeleteJob> list() {
+        evictFinished();
+        return List.copyOf(jobs.values());
+    }
+
+    private void evictFinished() {
+        Instant expiredBefore = Instant.now().minusMillis(retentionMillis);
+        List<DeleteJob> finished = jobs.values().stream()
+                .filter(job -> job.finishedAt() != null)
+                .sorted(Comparator.comparing(DeleteJob::finishedAt))
+                .toList();
+        int excess = finished.size() - maxFinishedJobs;
+        for (DeleteJob job : finished) {
+            if (excess > 0 || !job.finishedAt().isAfter(expiredBefore)) {
+                jobs.remove(job.id(), job);
+            }
+            excess--;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.nontrauma.migration.migrationutil.repository.DeleteMetrics;
+import com.nontrauma.migration.migrationutil.repository.ManifestStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Staged pipeline for delete manifests: download -> parse/delete -> archive.
+ *
+ * - download: up to {@code prefetch} objects are opened ahead of the workers, so the next files'
+ *   first bytes are already in flight while the current ones are deleted;
+ * - parse/delete: {@code fileParallelism} files are processed at once on dedicated threads
+ *   (not the shared {@code @Async} pool);
+ * - archive: processed files are handed to {@link ManifestStore#archiveManifest}, which bounds
+ *   its own concurrency; a file worker waits for a free slot, which slows intake instead of
+ *   queueing more.
+ *
+ * A file whose processing fails is not archived, so the next run picks it up again.
+ * {@code onArchived} is called for each file once it has been moved, and {@link #run} only
+ * returns after every move has finished.
+ */
+@Slf4j
+@Component
+public class ManifestPipeline {
+
+    private final ManifestStore manifestStore;
+
+    private final DeleteMetrics deleteMetrics;
+
+    private final int prefetch;
+
+    private final int fileParallelism;
+
+    private final ExecutorService fileExecutor;
+
+    @Autowired
+    public ManifestPipeline(ManifestStore manifestStore,
+                            DeleteMetrics deleteMetrics,
+                            @Value("${ntclaims.delete.pipeline.prefetch:8}") int prefetch,
+                            @Value("${ntclaims.delete.pipeline.file-parallelism:4}") int fileParallelism) {
+        this.manifestStore = manifestStore;
+        this.deleteMetrics = deleteMetrics;
+        this.prefetch = prefetch;
+        this.fileParallelism = fileParallelism;
+        this.fileExecutor = Executors.newFixedThreadPool(fileParallelism, namedDaemon("manifest-file-"));
+    }
+
+    /**
+     * Runs every file through the pipeline and returns once each one has been archived or has failed.
+     * If intake stops early, the files already started are still waited for before the error is rethrown.
+     */
+    public void run(Iterable<String> files, FileProcessor processor, String moveDirectory, Consumer<String> onArchived) {
+        // Files currently being deleted plus files opened ahead of them.
+        Semaphore openFiles = new Semaphore(fileParallelism + prefetch);
+        List<CompletableFuture<Void>> archived = new ArrayList<>();
+
+        try {
+            startFiles(files, processor, moveDirectory, onArchived, openFiles, archived);
+        } finally {
+            // Also when intake stops early (listing failed, interrupted): files already started
+            // are still being deleted and archived, so wait for them.
+            CompletableFuture.allOf(archived.toArray(CompletableFuture[]::new)).join();
+            log.info("Manifest pipeline finished; files={}", archived.size());
+        }
+    }
+
+    private void startFiles(Iterable<String> files, FileProcessor processor, String moveDirectory,
+                            Consumer<String> onArchived, Semaphore openFiles,
+                            List<CompletableFuture<Void>> archived) {
+        for (String key : files) {
+            acquire(openFiles);
+            CompletableFuture<Void> file = manifestStore.openManifest(key)
+                    .thenApplyAsync(manifest -> {
+                        processFile(manifest, processor);
+                        return manifest.contentLength();
+                    }, fileExecutor)
+                    .whenComplete((ignored, error) -> openFiles.release())
+                    .thenComposeAsync(contentLength -> manifestStore.archiveManifest(key, contentLength, moveDirectory),
+                            fileExecutor)
+                    .thenRun(() -> onArchived.accept(key))
+                    .exceptionally(error -> {
+                        log.error("File {} was not fully processed; leaving it in place for the next run",
+                                key, MemberDeleteExecutor.unwrap(error));
+                        return null;
+                    });
+            archived.add(file);
+        }
+    }
+
+    private void processFile(ManifestStore.Manifest manifest, FileProcessor processor) {
+        try (InputStream counted = deleteMetrics.countingDownload(manifest.body())) {
+            log.info("Processing file {} ({} bytes)", manifest.key(), manifest.contentLength());
+            processor.process(manifest.key(), counted);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error processing file " + manifest.key(), e);
+        }
+    }
+
+    /**
+     * Parses and deletes one manifest while it streams in.
+     */
+    @FunctionalInterface
+    public interface FileProcessor {
+        void process(String key, InputStream in) throws IOException;
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting to open the next manifest");
+        }
+    }
+
+    private static ThreadFactory namedDaemon(String prefix) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fileExecutor.shutdown();
+    }
+}
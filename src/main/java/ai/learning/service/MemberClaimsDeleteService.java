@@ -1,117 +1,261 @@
 package com.nontrauma.migration.migrationutil.service;
 
             import com.datastax.oss.driver.api.core.servererrors.InvalidQueryException;
+            import com.nontrauma.migration.migrationutil.repository.ClaimsStore;
+            import com.nontrauma.migration.migrationutil.repository.DeleteMetrics;
             import com.nontrauma.migration.migrationutil.repository.NTClaimDeleteRepo;
+            import com.nontrauma.migration.migrationutil.repository.ServiceDateSpan;
             import lombok.extern.slf4j.Slf4j;
             import org.springframework.beans.factory.annotation.Autowired;
             import org.springframework.stereotype.Service;
 
             import java.time.LocalDate;
-            import java.time.ZoneOffset;
+            import java.util.ArrayList;
             import java.util.List;
             import java.util.Locale;
+            import java.util.Optional;
+            import java.util.concurrent.CancellationException;
+            import java.util.concurrent.CompletableFuture;
+            import java.util.concurrent.CompletionException;
+            import java.util.concurrent.CompletionStage;
+            import java.util.function.Function;
 
             /**
              * Service that deletes claim data from Amazon Keyspaces with a fast-path partition delete,
              * and a fallback to adaptive range-window deletes by servicebegindate when range limits are hit.
              *
              * Flow per memberKey:
-             * 1) Try partition delete (claims + dup).
-             * 2) If range-delete limit is hit, iterate windows [2000-01-01, today+1)
-             *    and delete in 12 -> 6 -> 3 -> 1 month chunks.
+             * 1) Try partition delete (claims, then dup) on the async driver.
+             * 2) If range-delete limit is hit, probe the member's first/last servicebegindate and
+             *    iterate yearly windows over that span only, deleting in 12 -> 6 -> 3 -> 1 month chunks.
+             *    {@link RangeDeletePlanner} supplies the starting chunk size learned for the payer, and
+             *    members that already needed the fallback skip step 1.
              *
-             * Note: dup cleanup per chunk is expected to be handled inside
-             * NTClaimDeleteRepo.deleteClaimsByPayerMemberAndServiceDateRange(...)
+             * Members are deleted concurrently through {@link MemberDeleteExecutor}, which bounds
+             * the number of members in flight per payer and per process.
+             *
+             * Completed members and completed yearly windows are recorded in the file's
+             * {@link FileCheckpoint}, and skipped when the same file is run again after a failure.
+             * Completed members are also added to the payer's {@link DeletedMemberIndex}, so a member that
+             * appears again in another manifest or a later run is skipped without any statement.
+             *
+             * Failures are isolated per member: transient driver errors are retried by
+             * {@link MemberRetryPolicy} within the job's retry budget, and members that still fail are
+             * written to the job's dead-letter file while the rest of the batch carries on.
+             *
+             * Outcomes are recorded in {@link DeleteMetrics}; per-member logging is at debug level.
+             *
+             * Note: dup cleanup per chunk is handled inside
+             * ClaimsStore.deleteClaimsByPayerMemberAndServiceDateRangeAsync(...)
              * (select claimnumbers -> delete claims chunk -> delete dup by claimnumber).
              */
             @Slf4j
             @Service
             public class MemberClaimsDeleteService {
 
-                private static final LocalDate DELETE_START = LocalDate.of(2000, 1, 1);
+                private final ClaimsStore claimsDeleteRepo;
+
+                private final MemberDeleteExecutor memberDeleteExecutor;
+
+                private final RangeDeletePlanner rangeDeletePlanner;
 
-                private final ClaimsDeleteRepo  claimsDeleteRepo;
+                private final MemberRetryPolicy memberRetryPolicy;
+
+                private final DeleteMetrics deleteMetrics;
+
+                private final DeletedMemberIndex deletedMembers;
+
+                private final StartupTimings startupTimings;
 
                 @Autowired
-                public MemberClaimsDeleteService(ClaimsDeleteRepo  claimsDeleteRepo) {
+                public MemberClaimsDeleteService(ClaimsStore claimsDeleteRepo,
+                                                 MemberDeleteExecutor memberDeleteExecutor,
+                                                 RangeDeletePlanner rangeDeletePlanner,
+                                                 MemberRetryPolicy memberRetryPolicy,
+                                                 DeleteMetrics deleteMetrics,
+                                                 DeletedMemberIndex deletedMembers,
+                                                 StartupTimings startupTimings) {
                     this.claimsDeleteRepo = claimsDeleteRepo;
+                    this.memberDeleteExecutor = memberDeleteExecutor;
+                    this.rangeDeletePlanner = rangeDeletePlanner;
+                    this.memberRetryPolicy = memberRetryPolicy;
+                    this.deleteMetrics = deleteMetrics;
+                    this.deletedMembers = deletedMembers;
+                    this.startupTimings = startupTimings;
                 }
 
-                void deleteMembers(Long payerKey, List<Long> memberKeys) {
-                    memberKeys.forEach(memberKey -> deleteWithFallback(payerKey, memberKey));
+                /**
+                 * Deletes all members concurrently and returns once every member is done or dead-lettered.
+                 */
+                public void deleteMembers(DeleteJob job, List<Long> memberKeys, FileCheckpoint checkpoint) {
+                    MemberDeleteExecutor.PayerSlots payerSlots = memberDeleteExecutor.forPayer(job.payerKey());
+                    List<CompletableFuture<Void>> inFlight = new ArrayList<>(memberKeys.size());
+                    try {
+                        for (Long memberKey : memberKeys) {
+                            submitMember(job, payerSlots, memberKey, checkpoint, inFlight);
+                        }
+                    } catch (RuntimeException e) {
+                        awaitSent(inFlight);
+                        throw e;
+                    }
+                    memberDeleteExecutor.awaitAll(inFlight);
                 }
 
-                private void deleteWithFallback(Long payerKey, Long memberKey) {
+                /**
+                 * Primitive entry point for the streaming manifest parser: deletes
+                 * {@code memberKeys[0..length)} without boxing the keys. The array is not retained.
+                 */
+                public void deleteMembers(DeleteJob job, long[] memberKeys, int length, FileCheckpoint checkpoint) {
+                    // The payer's in-flight limit is looked up once per chunk, not once per member.
+                    MemberDeleteExecutor.PayerSlots payerSlots = memberDeleteExecutor.forPayer(job.payerKey());
+                    List<CompletableFuture<Void>> inFlight = new ArrayList<>(length);
                     try {
-                        // Fast path: full partition delete (claims + dup).
-                        claimsDeleteRepo.deleteClaimsByPayerAndMember(payerKey, memberKey);
-                        log.info("Deleted full partitions for payerKey={}, memberKey={}", payerKey, memberKey);
-                        return;
-                    } catch (InvalidQueryException iqe) {
-                        // Fallback ONLY for the known range-delete-limit error.
-                        if (!isRangeDeleteLimit(iqe)) {
-                            throw iqe;
+                        for (int i = 0; i < length; i++) {
+                            submitMember(job, payerSlots, memberKeys[i], checkpoint, inFlight);
                         }
-                        log.warn(
-                                "Range delete limit hit; falling back to date-window deletes. payerKey={}, memberKey={}, error={}",
-                                payerKey, memberKey, safeMessage(iqe)
-                        );
+                    } catch (RuntimeException e) {
+                        awaitSent(inFlight);
+                        throw e;
                     }
+                    memberDeleteExecutor.awaitAll(inFlight);
+                }
 
-                    LocalDate endExclusive = LocalDate.now(ZoneOffset.UTC).plusDays(1);
-                    LocalDate from = DELETE_START;
+                /**
+                 * When a chunk stops early (e.g. the job was cancelled), the members already sent still
+                 * finish, and are checkpointed or dead-lettered, before the file is given up.
+                 */
+                private static void awaitSent(List<CompletableFuture<Void>> inFlight) {
+                    CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                            .exceptionally(error -> null)
+                            .join();
+                }
 
-                    while (from.isBefore(endExclusive)) {
-                        LocalDate to = min(from.plusYears(1), endExclusive);
-                        deleteRangeAdaptive(payerKey, memberKey, from, to, 12);
-                        from = to;
+                private void submitMember(DeleteJob job, MemberDeleteExecutor.PayerSlots payerSlots, long memberKey,
+                                          FileCheckpoint checkpoint, List<CompletableFuture<Void>> inFlight) {
+                    if (job.isCancelled()) {
+                        throw new CancellationException("Delete job " + job.id() + " was cancelled");
                     }
-
-                    log.info("Deleted partitions via windowed deletes for payerKey={}, memberKey={}", payerKey, memberKey);
+                    if (checkpoint.isMemberDone(memberKey)) {
+                        job.memberSkipped();
+                        return;
+                    }
+                    long payerKey = job.payerKey();
+                    if (deletedMembers.contains(payerKey, memberKey)) {
+                        // Already deleted from another manifest or an earlier run.
+                        deleteMetrics.deduplicatedMember();
+                        job.memberSkipped();
+                        return;
+                    }
+                    startupTimings.firstDelete();
+                    inFlight.add(payerSlots.submit(
+                            () -> memberRetryPolicy.execute(job, memberKey,
+                                            () -> deleteWithFallback(job, memberKey, checkpoint))
+                                    .thenRun(() -> {
+                                        checkpoint.memberDone(memberKey);
+                                        deletedMembers.add(payerKey, memberKey);
+                                        job.memberDeleted();
+                                    })
+                                    .exceptionally(error -> {
+                                        log.error("Member delete failed, dead-lettering. payerKey={}, memberKey={}, error={}",
+                                                payerKey, memberKey, error.toString());
+                                        deleteMetrics.failedMember();
+                                        job.deadLetter(memberKey, error);
+                                        return null;
+                                    })));
                 }
 
-                private void deleteRangeAdaptive(Long payerKey, Long memberKey,
-                                                 LocalDate fromInclusive, LocalDate toExclusive,
-                                                 int monthsPerChunk) {
-                    if (!fromInclusive.isBefore(toExclusive)) return;
-
-                    try {
-                        int totalMonths = monthsBetween(fromInclusive, toExclusive);
+                private CompletionStage<Void> deleteWithFallback(DeleteJob job, long memberKey, FileCheckpoint checkpoint) {
+                    long payerKey = job.payerKey();
+                    if (rangeDeletePlanner.isKnownLarge(payerKey, memberKey)) {
+                        // The partition delete is known to fail for this member; skip the wasted attempt.
+                        return CompletableFuture.runAsync(
+                                () -> deleteWindowed(job, memberKey, checkpoint), memberDeleteExecutor.blockingExecutor());
+                    }
+                    // Fast path: full partition delete (claims, then dup).
+                    return claimsDeleteRepo.deleteClaimsByPayerAndMemberAsync(payerKey, memberKey)
+                            .handle((ignored, error) -> {
+                                if (error == null) {
+                                    deleteMetrics.fastPathMember();
+                                    log.debug("Deleted full partitions for payerKey={}, memberKey={}", payerKey, memberKey);
+                                    return CompletableFuture.<Void>completedFuture(null);
+                                }
+                                RuntimeException cause = MemberDeleteExecutor.unwrap(error);
+                                // Fallback ONLY for the known range-delete-limit error.
+                                if (!(cause instanceof InvalidQueryException iqe) || !isRangeDeleteLimit(iqe)) {
+                                    return CompletableFuture.<Void>failedFuture(cause);
+                                }
+                                log.debug(
+                                        "Range delete limit hit; falling back to date-window deletes. payerKey={}, memberKey={}, error={}",
+                                        payerKey, memberKey, safeMessage(iqe)
+                                );
+                                rangeDeletePlanner.markLarge(payerKey, memberKey);
+                                // Windowed deletes are blocking; keep them off the driver I/O threads.
+                                return CompletableFuture.runAsync(
+                                        () -> deleteWindowed(job, memberKey, checkpoint), memberDeleteExecutor.blockingExecutor());
+                            })
+                            .thenCompose(Function.identity());
+                }
 
-                        if (monthsPerChunk >= totalMonths) {
-                            deleteRange(payerKey, memberKey, fromInclusive, toExclusive);
-                            return;
-                        }
+                private void deleteWindowed(DeleteJob job, long memberKey, FileCheckpoint checkpoint) {
+                    long payerKey = job.payerKey();
+                    job.rangeFallback();
+                    deleteMetrics.fallbackMember();
+                    Optional<ServiceDateSpan> span = claimsDeleteRepo.findServiceDateSpan(payerKey, memberKey);
+                    if (span.isEmpty()) {
+                        log.debug("No claims left to delete for payerKey={}, memberKey={}", payerKey, memberKey);
+                        return;
+                    }
+                    RangeDeletePlanner.SizeClass sizeClass = RangeDeletePlanner.SizeClass.of(span.get());
 
-                        LocalDate cursor = fromInclusive;
-                        while (cursor.isBefore(toExclusive)) {
-                            LocalDate next = min(cursor.plusMonths(monthsPerChunk), toExclusive);
-                            deleteRange(payerKey, memberKey, cursor, next);
-                            cursor = next;
-                        }
-                    } catch (InvalidQueryException iqe) {
-                        // Shrink chunks ONLY for the known range-delete-limit error.
-                        if (!isRangeDeleteLimit(iqe)) {
-                            throw iqe;
-                        }
+                    // Calendar-year windows, restricted to the years the member actually has claims in.
+                    LocalDate endExclusive = span.get().last().plusDays(1);
+                    LocalDate from = span.get().first().withDayOfYear(1);
 
-                        int nextMonthsPerChunk = nextSmallerChunk(monthsPerChunk);
-                        if (nextMonthsPerChunk == monthsPerChunk) {
-                            throw iqe;
+                    while (from.isBefore(endExclusive)) {
+                        LocalDate to = DateWindows.min(from.plusYears(1), endExclusive);
+                        if (!checkpoint.isWindowDone(memberKey, from, to)) {
+                            int startMonths = rangeDeletePlanner.initialChunkMonths(payerKey, sizeClass);
+                            DateWindows.Result window = deleteRangeAdaptive(job, memberKey, from, to, startMonths);
+                            rangeDeletePlanner.recordWindow(payerKey, sizeClass, startMonths, window.monthsPerChunk());
+                            deleteMetrics.windowDeleted(window.monthsPerChunk(), window.dupRows());
+                            checkpoint.windowDone(memberKey, from, to);
                         }
+                        from = to;
+                    }
 
-                        log.warn(
-                                "Claims range delete too large; reducing chunk to {} month(s). payerKey={}, memberKey={}, from={}, to={}, error={}",
-                                nextMonthsPerChunk, payerKey, memberKey, fromInclusive, toExclusive, safeMessage(iqe)
-                        );
+                    log.debug("Deleted partitions via windowed deletes for payerKey={}, memberKey={}", payerKey, memberKey);
+                }
 
-                        deleteRangeAdaptive(payerKey, memberKey, fromInclusive, toExclusive, nextMonthsPerChunk);
-                    }
+                /**
+                 * Deletes the window in chunks of {@code monthsPerChunk}, shrinking on range-delete-limit
+                 * errors, and returns the chunk size that finally succeeded.
+                 */
+                private DateWindows.Result deleteRangeAdaptive(DeleteJob job, long memberKey,
+                                                               LocalDate fromInclusive, LocalDate toExclusive,
+                                                               int monthsPerChunk) {
+                    long payerKey = job.payerKey();
+                    return DateWindows.deleteAdaptive(fromInclusive, toExclusive, monthsPerChunk,
+                            (from, to) -> deleteRange(job, memberKey, from, to),
+                            // Shrink chunks ONLY for the known range-delete-limit error.
+                            e -> e instanceof InvalidQueryException iqe && isRangeDeleteLimit(iqe),
+                            (nextMonthsPerChunk, e) -> log.warn(
+                                    "Claims range delete too large; reducing chunk to {} month(s). payerKey={}, memberKey={}, from={}, to={}, error={}",
+                                    nextMonthsPerChunk, payerKey, memberKey, fromInclusive, toExclusive, safeMessage(e)
+                            ));
                 }
 
-                private void deleteRange(Long payerKey, Long memberKey,
-                                         LocalDate fromInclusive, LocalDate toExclusive) {
-                    claimsDeleteRepo.deleteClaimsByPayerMemberAndServiceDateRange(payerKey, memberKey, fromInclusive, toExclusive);
+                private int deleteRange(DeleteJob job, long memberKey,
+                                        LocalDate fromInclusive, LocalDate toExclusive) {
+                    try {
+                        int dupRows = claimsDeleteRepo.deleteClaimsByPayerMemberAndServiceDateRangeAsync(job.payerKey(), memberKey, fromInclusive, toExclusive)
+                                .toCompletableFuture()
+                                .join();
+                        job.dupRowsDeleted(dupRows);
+                        return dupRows;
+                    } catch (CompletionException e) {
+                        // Surface the driver exception so range-limit handling can match on it.
+                        throw MemberDeleteExecutor.unwrap(e);
+                    }
                 }
 
                 private boolean isRangeDeleteLimit(InvalidQueryException e) {
@@ -122,20 +266,4 @@ package com.nontrauma.migration.migrationutil.service;
                 private String safeMessage(Throwable t) {
                     return (t.getMessage() == null) ? "" : t.getMessage().toLowerCase(Locale.ROOT);
                 }
-
-                private LocalDate min(LocalDate a, LocalDate b) {
-                    return a.isBefore(b) ? a : b;
-                }
-
-                private int monthsBetween(LocalDate fromInclusive, LocalDate toExclusive) {
-                    return (toExclusive.getYear() - fromInclusive.getYear()) * 12
-                            + (toExclusive.getMonthValue() - fromInclusive.getMonthValue());
-                }
-
-                private int nextSmallerChunk(int monthsPerChunk) {
-                    if (monthsPerChunk > 6) return 6;
-                    if (monthsPerChunk > 3) return 3;
-                    if (monthsPerChunk > 1) return 1;
-                    return 1;
-                }
             }
@@ -0,0 +1,223 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs per-member delete chains concurrently on the async CQL driver with a bounded number
+ * of members in flight, both per payer and for the whole process.
+ *
+ * A submitted task is an async chain (e.g. claims partition delete -> dup partition delete);
+ * its permits are held until the whole chain completes. {@link #submit} blocks while either
+ * limit is reached, which gives the caller (the manifest reader) natural backpressure.
+ * Callers submitting a chunk of one payer's members look the payer's limit up once with
+ * {@link #forPayer} and submit through the returned {@link PayerSlots}.
+ *
+ * Blocking work that must not run on driver I/O threads, such as the windowed range-delete
+ * fallback, is run on {@link #blockingExecutor()}.
+ *
+ * The per-payer limit can be changed while deletes are running ({@link #setMaxInFlightPerPayer}).
+ */
+@Slf4j
+@Component
+public class MemberDeleteExecutor {
+
+    private final Semaphore processPermits;
+
+    private final int maxInFlightPerPayer;
+
+    private final ConcurrentMap<Long, ResizableSemaphore> payerPermits = new ConcurrentHashMap<>();
+
+    private final ExecutorService fallbackExecutor;
+
+    @Autowired
+    public MemberDeleteExecutor(@Value("${ntclaims.delete.max-in-flight:256}") int maxInFlight,
+                                @Value("${ntclaims.delete.max-in-flight-per-payer:64}") int maxInFlightPerPayer,
+                                @Value("${ntclaims.delete.fallback-threads:8}") int fallbackThreads) {
+        this.processPermits = new Semaphore(maxInFlight);
+        this.maxInFlightPerPayer = maxInFlightPerPayer;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.fallbackExecutor = Executors.newFixedThreadPool(fallbackThreads, r -> {
+            Thread t = new Thread(r, "member-delete-fallback-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("MemberDeleteExecutor initialized; maxInFlight={}, maxInFlightPerPayer={}, fallbackThreads={}",
+                maxInFlight, maxInFlightPerPayer, fallbackThreads);
+    }
+
+    /**
+     * Starts {@code task} once an in-flight slot is free for both the payer and the process.
+     * The returned future completes when the task's chain completes.
+     */
+    public CompletableFuture<Void> submit(long payerKey, Supplier<? extends CompletionStage<Void>> task) {
+        return forPayer(payerKey).submit(task);
+    }
+
+    /**
+     * The payer's in-flight limit, to submit many members of the payer without looking it up
+     * for each one. A limit changed with {@link #setMaxInFlightPerPayer} applies to it as well.
+     */
+    public PayerSlots forPayer(long payerKey) {
+        return new PayerSlots(payerLimit(payerKey));
+    }
+
+    private CompletableFuture<Void> run(Semaphore payer, Supplier<? extends CompletionStage<Void>> task) {
+        acquire(payer);
+        try {
+            acquire(processPermits);
+        } catch (RuntimeException e) {
+            payer.release();
+            throw e;
+        }
+
+        CompletableFuture<Void> chain;
+        try {
+            chain = task.get().toCompletableFuture();
+        } catch (RuntimeException e) {
+            chain = CompletableFuture.failedFuture(e);
+        }
+        return chain.whenComplete((ignored, error) -> {
+            processPermits.release();
+            payer.release();
+        });
+    }
+
+    /**
+     * Waits for every future to finish, then rethrows the first failure (unwrapped), if any.
+     */
+    public void awaitAll(List<CompletableFuture<Void>> futures) {
+        RuntimeException firstFailure = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for member deletes");
+            } catch (ExecutionException | CancellationException e) {
+                if (firstFailure == null) {
+                    firstFailure = unwrap(e);
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    /**
+     * Changes how many members of the payer may be in flight. Lowering the limit takes effect as
+     * in-flight members complete; nothing already sent is interrupted.
+     */
+    public void setMaxInFlightPerPayer(long payerKey, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1: " + maxInFlight);
+        }
+        payerLimit(payerKey).resize(maxInFlight);
+        log.info("Max in-flight members for payerKey={} set to {}", payerKey, maxInFlight);
+    }
+
+    public int maxInFlightPerPayer(long payerKey) {
+        ResizableSemaphore payer = payerPermits.get(payerKey);
+        return (payer == null) ? maxInFlightPerPayer : payer.limit();
+    }
+
+    private ResizableSemaphore payerLimit(long payerKey) {
+        return payerPermits.computeIfAbsent(payerKey, k -> new ResizableSemaphore(maxInFlightPerPayer));
+    }
+
+    public Executor blockingExecutor() {
+        return fallbackExecutor;
+    }
+
+    /**
+     * Strips the CompletableFuture wrappers so callers can match on the driver exception type.
+     */
+    public static RuntimeException unwrap(Throwable t) {
+        Throwable cause = t;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return (cause instanceof RuntimeException re) ? re : new CompletionException(cause);
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for an in-flight delete slot");
+        }
+    }
+
+    /**
+     * In-flight slots of one payer; see {@link #forPayer}.
+     */
+    public final class PayerSlots {
+
+        private final Semaphore payer;
+
+        private PayerSlots(Semaphore payer) {
+            this.payer = payer;
+        }
+
+        /**
+         * Same as {@link MemberDeleteExecutor#submit(long, Supplier)} for this payer.
+         */
+        public CompletableFuture<Void> submit(Supplier<? extends CompletionStage<Void>> task) {
+            return run(payer, task);
+        }
+    }
+
+    /**
+     * Semaphore whose total number of permits can be changed at runtime.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        // Guarded by this.
+        private int limit;
+
+        ResizableSemaphore(int limit) {
+            super(limit);
+            this.limit = limit;
+        }
+
+        synchronized int limit() {
+            return limit;
+        }
+
+        synchronized void resize(int newLimit) {
+            int delta = newLimit - limit;
+            if (delta > 0) {
+                release(delta);
+            } else if (delta < 0) {
+                reducePermits(-delta);
+            }
+            limit = newLimit;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fallbackExecutor.shutdown();
+    }
+}
@@ -0,0 +1,94 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Allocation-light reader for NDJSON member manifests.
+ *
+ * Walks Jackson tokens and copies each line's {@code memberKey} straight into a reusable
+ * {@code long[]} chunk, so no line String, DTO, Long or List is created per member. Other
+ * fields are skipped without being materialized.
+ */
+@Slf4j
+public class MemberKeyNdjsonParser {
+
+    static final String MEMBER_KEY_FIELD = "memberKey";
+
+    private final JsonFactory jsonFactory;
+
+    public MemberKeyNdjsonParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Receives member keys in chunks. The array is reused for the next chunk, so the consumer
+     * must be done with it before returning.
+     */
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(long[] memberKeys, int length) throws IOException;
+    }
+
+    /**
+     * Reads every manifest record from {@code in} and hands the member keys to {@code consumer}
+     * in chunks of at most {@code chunkSize}.
+     *
+     * @return number of member keys read
+     */
+    public long parse(InputStream in, int chunkSize, ChunkConsumer consumer) throws IOException {
+        long[] chunk = new long[chunkSize];
+        int size = 0;
+        long total = 0;
+        long withoutMemberKey = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected one JSON object per manifest line, got " + token);
+                }
+
+                boolean found = false;
+                long memberKey = 0;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (!found && MEMBER_KEY_FIELD.equals(field) && value != JsonToken.VALUE_NULL) {
+                        memberKey = (value == JsonToken.VALUE_STRING)
+                                ? Long.parseLong(parser.getText().trim())
+                                : parser.getLongValue();
+                        found = true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                if (!found) {
+                    withoutMemberKey++;
+                    continue;
+                }
+                chunk[size++] = memberKey;
+                total++;
+                if (size == chunkSize) {
+                    consumer.accept(chunk, size);
+                    size = 0;
+                }
+            }
+        }
+
+        if (size > 0) {
+            consumer.accept(chunk, size);
+        }
+        if (withoutMemberKey > 0) {
+            log.warn("Skipped {} manifest record(s) without a memberKey", withoutMemberKey);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,74 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.nontrauma.migration.migrationutil.repository.DriverErrors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries a member's delete chain on transient driver errors, with exponential backoff and
+ * full jitter, as long as the attempt limit and the job's retry budget allow it.
+ * Deletes are idempotent, so the whole chain is simply run again.
+ */
+@Slf4j
+@Component
+public class MemberRetryPolicy {
+
+    private final int maxAttempts;
+
+    private final long baseDelayMs;
+
+    private final long maxDelayMs;
+
+    @Autowired
+    public MemberRetryPolicy(@Value("${ntclaims.delete.retry.max-attempts:5}") int maxAttempts,
+                             @Value("${ntclaims.delete.retry.base-delay-ms:200}") long baseDelayMs,
+                             @Value("${ntclaims.delete.retry.max-delay-ms:10000}") long maxDelayMs) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public CompletableFuture<Void> execute(DeleteJob job, long memberKey, Supplier<? extends CompletionStage<Void>> attempt) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        run(job, memberKey, attempt, 1, result);
+        return result;
+    }
+
+    private void run(DeleteJob job, long memberKey, Supplier<? extends CompletionStage<Void>> attempt,
+                     int attemptNo, CompletableFuture<Void> result) {
+        CompletionStage<Void> stage;
+        try {
+            stage = attempt.get();
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+        stage.whenComplete((ignored, error) -> {
+            if (error == null) {
+                result.complete(null);
+                return;
+            }
+            RuntimeException cause = MemberDeleteExecutor.unwrap(error);
+            if (attemptNo >= maxAttempts || !DriverErrors.isRetryable(cause) || !job.tryConsumeRetry()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delayMs = backoffMs(attemptNo);
+            log.debug("Retrying memberKey={} (attempt {}) in {} ms after {}", memberKey, attemptNo + 1, delayMs, cause.toString());
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
+                    .execute(() -> run(job, memberKey, attempt, attemptNo + 1, result));
+        });
+    }
+
+    private long backoffMs(int attemptNo) {
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attemptNo - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
@@ -0,0 +1,136 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.nontrauma.migration.migrationutil.repository.ServiceDateSpan;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Learns how the range-delete fallback should be planned, so members don't re-discover it
+ * through failed {@code InvalidQueryException} round trips.
+ *
+ * - Chunk size: the months-per-chunk that succeeded is remembered per payer and partition-size
+ *   class, and used as the starting chunk for the next window. After a streak of first-try
+ *   successes it is grown one step again (1 -> 3 -> 6 -> 12).
+ * - Known-large members: members that already needed the fallback skip the partition delete
+ *   attempt and go straight to the range path.
+ *
+ * The size class is derived from the member's servicebegindate span, which is probed before the
+ * windowed deletes anyway; longer histories mean larger partitions for the same payer.
+ *
+ * Only real deletes should teach the planner; a dry run works on a {@link #scratchCopy}.
+ */
+@Slf4j
+@Component
+public class RangeDeletePlanner {
+
+    static final int MAX_CHUNK_MONTHS = 12;
+
+    public enum SizeClass {
+        UP_TO_1_YEAR,
+        UP_TO_5_YEARS,
+        UP_TO_10_YEARS,
+        OVER_10_YEARS;
+
+        public static SizeClass of(ServiceDateSpan span) {
+            long months = ChronoUnit.MONTHS.between(span.first(), span.last());
+            if (months < 12) return UP_TO_1_YEAR;
+            if (months < 60) return UP_TO_5_YEARS;
+            if (months < 120) return UP_TO_10_YEARS;
+            return OVER_10_YEARS;
+        }
+    }
+
+    private record ChunkKey(long payerKey, SizeClass sizeClass) {
+    }
+
+    private record MemberRef(long payerKey, long memberKey) {
+    }
+
+    private static final class LearnedChunk {
+        final AtomicInteger months = new AtomicInteger(MAX_CHUNK_MONTHS);
+        final AtomicInteger firstTrySuccesses = new AtomicInteger();
+    }
+
+    private final ConcurrentMap<ChunkKey, LearnedChunk> learnedChunks = new ConcurrentHashMap<>();
+
+    private final Set<MemberRef> knownLargeMembers = ConcurrentHashMap.newKeySet();
+
+    private final int growAfterSuccesses;
+
+    private final int maxKnownLargeMembers;
+
+    @Autowired
+    public RangeDeletePlanner(@Value("${ntclaims.delete.range.grow-after-successes:50}") int growAfterSuccesses,
+                              @Value("${ntclaims.delete.range.max-known-large-members:1000000}") int maxKnownLargeMembers) {
+        this.growAfterSuccesses = growAfterSuccesses;
+        this.maxKnownLargeMembers = maxKnownLargeMembers;
+    }
+
+    public boolean isKnownLarge(long payerKey, long memberKey) {
+        return knownLargeMembers.contains(new MemberRef(payerKey, memberKey));
+    }
+
+    public void markLarge(long payerKey, long memberKey) {
+        // Best-effort memory bound; past the cap members simply pay the failed fast-path attempt again.
+        if (knownLargeMembers.size() < maxKnownLargeMembers) {
+            knownLargeMembers.add(new MemberRef(payerKey, memberKey));
+        }
+    }
+
+    public int initialChunkMonths(long payerKey, SizeClass sizeClass) {
+        LearnedChunk learned = learnedChunks.get(new ChunkKey(payerKey, sizeClass));
+        return (learned == null) ? MAX_CHUNK_MONTHS : learned.months.get();
+    }
+
+    /**
+     * Records how a window went: it was started with {@code startedWith} months per chunk and
+     * completed with {@code succeededWith} months per chunk.
+     */
+    public void recordWindow(long payerKey, SizeClass sizeClass, int startedWith, int succeededWith) {
+        LearnedChunk learned = learnedChunks.computeIfAbsent(new ChunkKey(payerKey, sizeClass), k -> new LearnedChunk());
+
+        if (succeededWith < startedWith) {
+            int previous = learned.months.getAndAccumulate(succeededWith, Math::min);
+            learned.firstTrySuccesses.set(0);
+            if (succeededWith < previous) {
+                log.info("Learned range-delete chunk of {} month(s) for payerKey={}, sizeClass={}",
+                        succeededWith, payerKey, sizeClass);
+            }
+            return;
+        }
+
+        if (learned.firstTrySuccesses.incrementAndGet() >= growAfterSuccesses) {
+            learned.firstTrySuccesses.set(0);
+            learned.months.updateAndGet(RangeDeletePlanner::nextLargerChunk);
+        }
+    }
+
+    /**
+     * A planner starting from the chunk sizes learned so far, whose own learning never reaches this
+     * one. Known-large members are not copied.
+     */
+    RangeDeletePlanner scratchCopy() {
+        RangeDeletePlanner copy = new RangeDeletePlanner(growAfterSuccesses, maxKnownLargeMembers);
+        learnedChunks.forEach((key, learned) -> {
+            LearnedChunk copied = new LearnedChunk();
+            copied.months.set(learned.months.get());
+            copied.firstTrySuccesses.set(learned.firstTrySuccesses.get());
+            copy.learnedChunks.put(key, copied);
+        });
+        return copy;
+    }
+
+    static int nextLargerChunk(int monthsPerChunk) {
+        if (monthsPerChunk < 3) return 3;
+        if (monthsPerChunk < 6) return 6;
+        return MAX_CHUNK_MONTHS;
+    }
+}
@@ -1,18 +1,29 @@
 package com.nontrauma.migration.migrationutil.repository;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import io.awspring.cloud.autoconfigure.s3.S3TransferManagerAutoConfiguration;
 import io.awspring.cloud.autoconfigure.s3.properties.S3TransferManagerProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 
@@ -20,17 +31,23 @@ import org.springframework.stereotype.Repository;
 //import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.UploadFileRequest;
+import software.amazon.awssdk.transfer.s3.progress.LoggingTransferListener;
 
 @Repository
-public class S3Repository {
+@Profile("!offline")
+public class S3Repository implements ManifestStore {
 
     private static final Logger log = LoggerFactory.getLogger(S3Repository.class);
 
@@ -40,43 +57,199 @@ public class S3Repository {
     @Value("${ntclaims.bucket}")
     private String bucketName;
 
-    private S3Client s3Client;
+    // Clients and stages are built on first use (see init); short-lived tasks only pay for the ones they need.
+    private final Lazy<S3Client> s3Client = new Lazy<>(this::buildS3Client);
 
     // private TransferManager xfer_mgr;
-    private S3TransferManager xfer_mgr;
+    private final Lazy<S3TransferManager> xfer_mgr = new Lazy<>(this::buildTransferManager);
 
     @Value("${ntclaims.source.bucket}")
     private String sourceBucketName;
-    private S3AsyncClient asyncS3Client;
+    private final Lazy<S3AsyncClient> asyncS3Client = new Lazy<>(this::buildAsyncS3Client);
 
     @Value("${ntclaims.target.bucket}")
     private String targetBucketName;
 
+    @Autowired
+    private DeleteMetrics deleteMetrics;
+
+    // Sub-prefixes listed at once by streamManifests.
+    @Value("${ntclaims.s3.list.parallelism:8}")
+    private int listParallelism;
+
+    // Keys listed ahead of the pipeline before listing pauses.
+    @Value("${ntclaims.s3.list.queue-capacity:10000}")
+    private int listQueueCapacity;
+
+    private final Lazy<ExecutorService> listExecutor = new Lazy<>(this::buildListExecutor);
+
+    private final Lazy<S3PrefixLister> sourcePrefixLister = new Lazy<>(
+            () -> new S3PrefixLister(this.s3Client.get(), this.sourceBucketName, this.listExecutor.get(), listQueueCapacity));
+
+    // Server-side copies in flight when archiving; further moves wait.
+    @Value("${ntclaims.s3.archive.max-concurrent-copies:16}")
+    private int archiveMaxConcurrentCopies;
+
+    // Part size for objects over 5 GB, which CopyObject can't copy in one request.
+    @Value("${ntclaims.s3.archive.copy-part-size-mb:512}")
+    private long archiveCopyPartSizeMb;
+
+    // Longest a moved source waits for its DeleteObjects batch to fill.
+    @Value("${ntclaims.s3.archive.delete-flush-ms:500}")
+    private long archiveDeleteFlushMs;
+
+    @Value("${ntclaims.s3.archive.drain-timeout-ms:60000}")
+    private long archiveDrainTimeoutMs;
+
+    private final Lazy<S3ArchiveStage> archiveStage = new Lazy<>(() -> new S3ArchiveStage(this.asyncS3Client.get(),
+            archiveMaxConcurrentCopies, archiveCopyPartSizeMb * 1024 * 1024, archiveDeleteFlushMs));
+
+    // Objects fetched at once by fetchContents/getContentsBatch.
+    @Value("${ntclaims.s3.fetch.max-concurrency:32}")
+    private int fetchMaxConcurrency;
+
+    // Objects larger than one part are fetched as parallel byte-range GETs.
+    @Value("${ntclaims.s3.fetch.part-size-mb:8}")
+    private long fetchPartSizeMb;
+
+    @Value("${ntclaims.s3.fetch.parts-per-object:8}")
+    private int fetchPartsPerObject;
+
+    private final Lazy<S3BatchFetcher> targetFetcher = new Lazy<>(() -> new S3BatchFetcher(this.asyncS3Client.get(),
+            fetchMaxConcurrency, fetchPartSizeMb * 1024 * 1024, fetchPartsPerObject));
+
+    // Uploads: files over the threshold are sent as parallel multipart uploads.
+    @Value("${ntclaims.s3.upload.part-size-mb:16}")
+    private long uploadPartSizeMb;
+
+    @Value("${ntclaims.s3.upload.threshold-mb:16}")
+    private long uploadThresholdMb;
+
+    // Parts in flight across all uploads.
+    @Value("${ntclaims.s3.upload.max-concurrency:32}")
+    private int uploadMaxConcurrency;
+
+    // Multipart-enabled client behind xfer_mgr.
+    private final Lazy<S3AsyncClient> uploadS3Client = new Lazy<>(this::buildUploadS3Client);
+
+    // Build the manifest download client in the background at startup instead of on first use.
+    @Value("${ntclaims.s3.warm-up-async-client:true}")
+    private boolean warmUpAsyncClient;
+
+    /**
+     * Builds nothing up front: each client is created on first use, so a delete task that only
+     * reads and archives manifests never builds the sync or upload clients. The async client,
+     * which every delete job needs, is warmed up on a background thread while the rest of the
+     * application starts.
+     */
     @PostConstruct
     private void init() {
-        this.s3Client = S3Client.builder().build();
-        this.asyncS3Client = S3AsyncClient.builder().region(Region.of(region)).build();
-        this.xfer_mgr = S3TransferManager.builder().s3Client(asyncS3Client).build();
-        if (this.s3Client != null) {
-            log.info("S3Client is initialized successfully");
+        if (warmUpAsyncClient) {
+            Thread warmUp = new Thread(() -> {
+                try {
+                    this.asyncS3Client.get();
+                } catch (RuntimeException e) {
+                    // Retried, and reported, on first use.
+                    log.warn("S3 async client warm-up failed: {}", e.toString());
+                }
+            }, "s3-client-warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
         }
+        log.info("S3Repository initialized; clients are built on first use");
     }
 
-    public void uploadLargeFile(File fileToUpload) {
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(this.bucketName)
-                .key("migration/" + fileToUpload.getName())
+    private S3Client buildS3Client() {
+        long start = System.nanoTime();
+        S3Client client = S3Client.builder().build();
+        log.info("S3Client is initialized successfully in {} ms", (System.nanoTime() - start) / 1_000_000);
+        return client;
+    }
+
+    private S3AsyncClient buildAsyncS3Client() {
+        long start = System.nanoTime();
+        S3AsyncClient client = S3AsyncClient.builder().region(Region.of(region)).build();
+        log.info("S3AsyncClient is initialized successfully in {} ms", (System.nanoTime() - start) / 1_000_000);
+        return client;
+    }
+
+    private S3AsyncClient buildUploadS3Client() {
+        return S3AsyncClient.builder()
+                .region(Region.of(region))
+                .multipartEnabled(true)
+                .multipartConfiguration(multipart -> multipart
+                        .minimumPartSizeInBytes(uploadPartSizeMb * 1024 * 1024)
+                        .thresholdInBytes(uploadThresholdMb * 1024 * 1024))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(uploadMaxConcurrency))
                 .build();
-        this.s3Client.putObject(putObjectRequest, RequestBody.fromFile(fileToUpload));
+    }
+
+    private S3TransferManager buildTransferManager() {
+        return S3TransferManager.builder().s3Client(this.uploadS3Client.get()).build();
+    }
+
+    private ExecutorService buildListExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(listParallelism, r -> {
+            Thread t = new Thread(r, "s3-list-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void uploadLargeFile(File fileToUpload) {
+        this.uploadLargeFileAsync(fileToUpload).completion().join();
+    }
 
+    public S3UploadHandle uploadLargeFileAsync(File fileToUpload) {
+        return this.upload("migration/" + fileToUpload.getName(), fileToUpload);
     }
 
     public void uploadFile(BigInteger payerKey, File fileToUpload) {
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(this.bucketName)
-                .key("migration-keyspaces/" + payerKey + "/" + fileToUpload.getName())
+        this.uploadFileAsync(payerKey, fileToUpload).completion().join();
+    }
+
+    public S3UploadHandle uploadFileAsync(BigInteger payerKey, File fileToUpload) {
+        return this.upload("migration-keyspaces/" + payerKey + "/" + fileToUpload.getName(), fileToUpload);
+    }
+
+    /**
+     * Uploads to {@code bucketName} through the transfer manager: parallel multipart above
+     * {@code ntclaims.s3.upload.threshold-mb}, progress logged and available on the handle.
+     */
+    private S3UploadHandle upload(final String key, final File fileToUpload) {
+        UploadFileRequest uploadFileRequest = UploadFileRequest.builder()
+                .putObjectRequest(request -> request.bucket(this.bucketName).key(key))
+                .source(fileToUpload)
+                .addTransferListener(LoggingTransferListener.create())
                 .build();
-        this.s3Client.putObject(putObjectRequest, RequestBody.fromFile(fileToUpload));
+        log.info("Uploading {} ({} bytes) to {}", fileToUpload.getName(), fileToUpload.length(), key);
+        return new S3UploadHandle(key, this.xfer_mgr.get().uploadFile(uploadFileRequest));
+    }
+
+    @Override
+    public List<String> listManifests(final String prefix) {
+        return this.listFilesFromDirectoryFromSourceBucket(prefix);
+    }
+
+    /**
+     * Streams the keys under {@code prefix} in the raw bucket while they are being listed, walking
+     * sub-prefixes in parallel. Close the stream to stop listing early.
+     */
+    @Override
+    public Stream<String> streamManifests(final String prefix) {
+        return this.sourcePrefixLister.get().stream(prefix);
+    }
+
+    @Override
+    public CompletableFuture<Manifest> openManifest(final String key) {
+        return this.openFromRawBucketAsync(key)
+                .thenApply(in -> new Manifest(key, in, in.response().contentLength()));
+    }
+
+    @Override
+    public CompletableFuture<Void> archiveManifest(final String key, final long contentLength, final String moveDirectory) {
+        return this.archiveStage.get().archive(this.sourceBucketName, key, moveDirectory, contentLength);
     }
 
     public List<String> listFilesFromDirectoryFromSourceBucket(final String directory) {
@@ -84,12 +257,13 @@ public class S3Repository {
     }
 
     private List<String> listFilesFromDirectory(final String bucket, final String directory) {
-        ListObjectsRequest listObjectRequest = ListObjectsRequest
+        ListObjectsV2Request listObjectRequest = ListObjectsV2Request
                 .builder()
                 .bucket(bucket)
                 .prefix(directory)
                 .build();
-        return this.s3Client.listObjects(listObjectRequest).contents().stream().map(s3Object -> s3Object.key()).collect(Collectors.toList());
+        // The paginator follows continuation tokens; a single response stops at 1000 keys.
+        return this.s3Client.get().listObjectsV2Paginator(listObjectRequest).contents().stream().map(s3Object -> s3Object.key()).collect(Collectors.toList());
     }
 
     public void processAndMoveFileFromRawBucket(final String key, Consumer<byte[]> processor, final String moveDirectory) {
@@ -97,6 +271,49 @@ public class S3Repository {
         this.moveFile(this.sourceBucketName, key, moveDirectory);
     }
 
+    /**
+     * Streaming variant of {@link #processAndMoveFileFromRawBucket(String, Consumer, String)}.
+     * The processor reads the object body while it is still downloading, so memory use does not
+     * depend on the object size.
+     */
+    public void streamAndMoveFileFromRawBucket(final String key, InputStreamProcessor processor, final String moveDirectory) {
+        this.stream(this.sourceBucketName, key, processor);
+        this.moveFile(this.sourceBucketName, key, moveDirectory);
+    }
+
+    private void stream(final String bucket, final String key, InputStreamProcessor processor) {
+        GetObjectRequest objectRequest = GetObjectRequest
+                .builder()
+                .key(key)
+                .bucket(bucket)
+                .build();
+        ResponseInputStream<GetObjectResponse> response = this.s3Client.get().getObject(objectRequest);
+        try (InputStream in = this.deleteMetrics.countingDownload(response)) {
+            log.info("Streaming file {} ({} bytes) to consumer", key, response.response().contentLength());
+            processor.process(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error streaming file " + key, e);
+        }
+    }
+
+    /**
+     * Starts downloading {@code key} from the raw bucket on the async client. The future completes
+     * once the response headers arrive; the body is then streamed with backpressure as it is read,
+     * so opening a few objects ahead of time only costs a connection each.
+     */
+    public CompletableFuture<ResponseInputStream<GetObjectResponse>> openFromRawBucketAsync(final String key) {
+        GetObjectRequest objectRequest = GetObjectRequest
+                .builder()
+                .key(key)
+                .bucket(this.sourceBucketName)
+                .build();
+        return this.asyncS3Client.get().getObject(objectRequest, AsyncResponseTransformer.toBlockingInputStream());
+    }
+
+    public CompletableFuture<Void> moveFileFromRawBucket(final String key, final String moveDirectory) {
+        return this.moveFile(this.sourceBucketName, key, moveDirectory);
+    }
+
     private void process(final String bucket, final String key, Consumer<byte[]> processor) {
         //log.info("Processing file {}", key);
         GetObjectRequest objectRequest = GetObjectRequest
@@ -104,24 +321,21 @@ public class S3Repository {
                 .key(key)
                 .bucket(bucket)
                 .build();
-        ResponseBytes<GetObjectResponse> objectBytes = this.s3Client.getObjectAsBytes(objectRequest);
-        log.info("Before calling consumer callback...");
-        processor.accept(objectBytes.asByteArray());
-        log.info("After calling consumer callback...");
+        ResponseBytes<GetObjectResponse> objectBytes = this.s3Client.get().getObjectAsBytes(objectRequest);
+        byte[] contents = objectBytes.asByteArray();
+        this.deleteMetrics.s3BytesRead(contents.length);
+        log.debug("Before calling consumer callback...");
+        processor.accept(contents);
+        log.debug("After calling consumer callback...");
     }
 
-    private void moveFile(final String bucket, final String key, final String moveDirectory) {
+    /**
+     * Moves through the archive stage: bounded concurrent copies, batched source deletes, and a
+     * future that completes once the source is gone. Moves still in flight are drained on shutdown.
+     */
+    private CompletableFuture<Void> moveFile(final String bucket, final String key, final String moveDirectory) {
         //  log.info("Moving file {} to directory {}", key, moveDirectory);
-        CompletableFuture<CopyObjectResponse> cor = this.asyncS3Client.copyObject(builder -> builder.sourceBucket(bucket).sourceKey(key).
-                destinationBucket(bucket).destinationKey(moveDirectory + "/" + key));
-        cor.whenComplete((response, exception) -> {
-            if (response != null) {
-                log.debug("File moved successfully");
-                this.asyncS3Client.deleteObject(builder -> builder.bucket(bucket).key(key));
-            } else {
-                log.error("Error moving file", exception);
-            }
-        });
+        return this.archiveStage.get().archive(bucket, key, moveDirectory, -1);
     }
 
     public byte[] getContents(final String fileName) {
@@ -131,29 +345,28 @@ public class S3Repository {
                 .bucket(targetBucketName)
                 .build();
 
-        ResponseBytes<GetObjectResponse> objectBytes = this.s3Client.getObjectAsBytes(objectRequest);
+        ResponseBytes<GetObjectResponse> objectBytes = this.s3Client.get().getObjectAsBytes(objectRequest);
         return objectBytes.asByteArray();
     }
 
+    /**
+     * Contents of the given files in request order; missing or unreadable files are logged and left out.
+     */
     public List<byte[]> getContentsBatch(final List<String> fileNames) {
-        return fileNames.parallelStream().map(fileName -> {
-            try {
-                GetObjectRequest objectRequest = GetObjectRequest
-                        .builder()
-                        .key(fileName)
-                        .bucket(targetBucketName)
-                        .build();
-
-                ResponseBytes<GetObjectResponse> objectBytes = this.s3Client.getObjectAsBytes(objectRequest);
-                return objectBytes.asByteArray();
-            } catch (NoSuchKeyException e) {
-                log.error("File not found on S3: {}", fileName, e);
-                return null; // Handle missing file gracefully
-            } catch (Exception e) {
-                log.error("Error retrieving content for file: {}", fileName, e);
-                return null; // Handle other errors gracefully
-            }
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+        List<byte[]> contents = new ArrayList<>(fileNames.size());
+        this.fetchContents(fileNames, true, (fileName, bytes) -> contents.add(bytes)).join();
+        return contents;
+    }
+
+    /**
+     * Fetches files from the target bucket on the async client, {@code ntclaims.s3.fetch.max-concurrency}
+     * at a time, and hands each one to {@code consumer} as soon as it is complete (or in request
+     * order with {@code requestOrder}). Consumer calls are not concurrent. Large files are fetched
+     * as parallel byte ranges. Missing or unreadable files are logged and skipped.
+     */
+    public CompletableFuture<Void> fetchContents(final List<String> fileNames, final boolean requestOrder,
+                                                 final BiConsumer<String, byte[]> consumer) {
+        return this.targetFetcher.get().fetch(this.targetBucketName, fileNames, requestOrder, consumer);
     }
 
     public CompletableFuture<ResponseBytes<GetObjectResponse>> getContentsAsync(final String fileName) {
@@ -163,7 +376,7 @@ public class S3Repository {
                 .key(fileName)
                 .bucket(targetBucketName)
                 .build();
-        return this.asyncS3Client.getObject(objectRequest, AsyncResponseTransformer.toBytes());//.whenComplete(consumer);
+        return this.asyncS3Client.get().getObject(objectRequest, AsyncResponseTransformer.toBytes());//.whenComplete(consumer);
 
     }
 
@@ -173,14 +386,76 @@ public class S3Repository {
                 .bucket(this.targetBucketName)
                 .key(fileName)
                 .build();
-        this.s3Client.putObject(putObjectRequest, RequestBody.fromString(content));
+        this.s3Client.get().putObject(putObjectRequest, RequestBody.fromString(content));
     }
 
-    public void uploadMemberFile(Long payerKey, File fileToUpload) {
+    @Override
+    public void uploadDeadLetterFile(Long payerKey, File fileToUpload) {
         PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                 .bucket(this.bucketName)
-                .key("migrated-members/" + payerKey + "/" + fileToUpload.getName())
+                .key("dead-letter-members/" + payerKey + "/" + fileToUpload.getName())
                 .build();
-        this.s3Client.putObject(putObjectRequest, RequestBody.fromFile(fileToUpload));
+        this.s3Client.get().putObject(putObjectRequest, RequestBody.fromFile(fileToUpload));
+    }
+
+    public void uploadMemberFile(Long payerKey, File fileToUpload) {
+        this.uploadMemberFileAsync(payerKey, fileToUpload).completion().join();
+    }
+
+    public S3UploadHandle uploadMemberFileAsync(Long payerKey, File fileToUpload) {
+        return this.upload("migrated-members/" + payerKey + "/" + fileToUpload.getName(), fileToUpload);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        this.archiveStage.ifBuilt(stage -> stage.drain(archiveDrainTimeoutMs));
+        this.listExecutor.ifBuilt(ExecutorService::shutdownNow);
+        this.xfer_mgr.ifBuilt(S3TransferManager::close);
+        this.uploadS3Client.ifBuilt(S3AsyncClient::close);
+        this.asyncS3Client.ifBuilt(S3AsyncClient::close);
+        this.s3Client.ifBuilt(S3Client::close);
+    }
+
+    /**
+     * Consumer of an S3 object body that is read as a stream.
+     */
+    @FunctionalInterface
+    public interface InputStreamProcessor {
+        void process(InputStream in) throws IOException;
+    }
+
+    /**
+     * Value built on first use, once, by whichever thread gets there first.
+     */
+    private static final class Lazy<T> {
+
+        private final Supplier<T> factory;
+
+        private volatile T value;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() {
+            T built = value;
+            if (built == null) {
+                synchronized (this) {
+                    built = value;
+                    if (built == null) {
+                        built = factory.get();
+                        value = built;
+                    }
+                }
+            }
+            return built;
+        }
+
+        void ifBuilt(Consumer<T> action) {
+            T built = value;
+            if (built != null) {
+                action.accept(built);
+            }
+        }
     }
 }
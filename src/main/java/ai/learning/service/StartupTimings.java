@@ -0,0 +1,87 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Startup timing report for short-lived delete tasks: JVM start to application ready, the slowest
+ * bean initializations (when the application records startup steps, see the application class),
+ * and JVM start to the first member delete.
+ *
+ * The first-delete time is logged once and exposed as {@code claims.delete.startup.first.delete}
+ * (milliseconds since JVM start; 0 until a delete has been sent).
+ */
+@Slf4j
+@Component
+public class StartupTimings implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final String BEAN_INSTANTIATE_STEP = "spring.beans.instantiate";
+
+    private final int slowestBeans;
+
+    private final AtomicLong firstDeleteMs = new AtomicLong();
+
+    @Autowired
+    public StartupTimings(MeterRegistry registry,
+                          @Value("${ntclaims.startup.report.slowest-beans:10}") int slowestBeans) {
+        this.slowestBeans = slowestBeans;
+        Gauge.builder("claims.delete.startup.first.delete", firstDeleteMs, AtomicLong::get)
+                .description("Time from JVM start to the first member delete")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        long sinceJvmStart = ManagementFactory.getRuntimeMXBean().getUptime();
+        Duration contextStartup = event.getTimeTaken();
+        log.info("Startup: ready {} ms after JVM start (application context {} ms)",
+                sinceJvmStart, contextStartup == null ? "?" : contextStartup.toMillis());
+
+        ApplicationStartup startup = event.getApplicationContext().getApplicationStartup();
+        if (startup instanceof BufferingApplicationStartup buffering && slowestBeans > 0) {
+            String slowest = buffering.getBufferedTimeline().getEvents().stream()
+                    .filter(step -> BEAN_INSTANTIATE_STEP.equals(step.getStartupStep().getName()))
+                    .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                    .limit(slowestBeans)
+                    .map(step -> beanName(step.getStartupStep()) + "=" + step.getDuration().toMillis() + "ms")
+                    .collect(Collectors.joining(", "));
+            log.info("Startup: slowest bean initializations (including their dependencies): {}", slowest);
+        }
+    }
+
+    /**
+     * Records the first member delete of this process; later calls are ignored.
+     */
+    public void firstDelete() {
+        if (firstDeleteMs.get() == 0
+                && firstDeleteMs.compareAndSet(0, Math.max(1, ManagementFactory.getRuntimeMXBean().getUptime()))) {
+            log.info("Startup: first member delete sent {} ms after JVM start", firstDeleteMs.get());
+        }
+    }
+
+    private static String beanName(StartupStep step) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if ("beanName".equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return step.getName();
+    }
+}
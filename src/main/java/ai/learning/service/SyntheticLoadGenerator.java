@@ -0,0 +1,123 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.nontrauma.migration.migrationutil.repository.InMemoryClaimsStore;
+import com.nontrauma.migration.migrationutil.repository.LocalManifestStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates member manifests into the {@link LocalManifestStore} and seeds the matching claim
+ * partitions into the {@link InMemoryClaimsStore}, for offline throughput runs.
+ *
+ * Claims per member follow a Zipf distribution over {@code 1..maxClaimsPerMember}, so most members
+ * are small and take the partition-delete fast path while a long tail is large enough to hit the
+ * range-delete limit and go through the windowed fallback. A member's claims are spread over
+ * {@code claims / claimsPerMonth} months (at most 15 years) ending at the end of 2024.
+ */
+@Slf4j
+@Component
+@Profile("offline")
+public class SyntheticLoadGenerator {
+
+    private static final int MAX_SPAN_MONTHS = 15 * 12;
+
+    private static final LocalDate SPAN_END = LocalDate.of(2025, 1, 1);
+
+    private final InMemoryClaimsStore claimsStore;
+
+    private final LocalManifestStore manifestStore;
+
+    @Autowired
+    public SyntheticLoadGenerator(InMemoryClaimsStore claimsStore, LocalManifestStore manifestStore) {
+        this.claimsStore = claimsStore;
+        this.manifestStore = manifestStore;
+    }
+
+    public record LoadSpec(long payerKey,
+                           int files,
+                           int membersPerFile,
+                           double zipfExponent,
+                           int maxClaimsPerMember,
+                           int claimsPerMonth,
+                           long seed) {
+    }
+
+    public record GeneratedLoad(String prefix,
+                                long members,
+                                long claims,
+                                int largestMember,
+                                long membersOver10kClaims) {
+    }
+
+    public GeneratedLoad generate(LoadSpec spec) {
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        double[] cdf = zipfCdf(spec.maxClaimsPerMember(), spec.zipfExponent());
+        String prefix = "offline-load/" + spec.payerKey() + "/" + System.currentTimeMillis();
+        Path directory = manifestStore.root().resolve(prefix);
+
+        long memberKey = random.nextLong(1L, 1L << 40);
+        long claims = 0;
+        int largest = 0;
+        long over10k = 0;
+        try {
+            Files.createDirectories(directory);
+            for (int f = 0; f < spec.files(); f++) {
+                Path file = directory.resolve(String.format("manifest-%05d.ndjson", f));
+                try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    for (int m = 0; m < spec.membersPerFile(); m++) {
+                        memberKey++;
+                        int memberClaims = sample(cdf, random);
+                        int months = Math.min(MAX_SPAN_MONTHS,
+                                Math.max(1, (memberClaims + spec.claimsPerMonth() - 1) / spec.claimsPerMonth()));
+                        claimsStore.putMember(spec.payerKey(), memberKey, SPAN_END.minusMonths(months), months, memberClaims);
+
+                        out.write("{\"payerKey\":" + spec.payerKey() + ",\"memberKey\":" + memberKey + "}\n");
+                        claims += memberClaims;
+                        largest = Math.max(largest, memberClaims);
+                        if (memberClaims > 10_000) over10k++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write synthetic manifests under " + directory, e);
+        }
+
+        long members = (long) spec.files() * spec.membersPerFile();
+        log.info("Generated synthetic load {}: members={}, claims={}, largestMember={}, membersOver10kClaims={}",
+                prefix, members, claims, largest, over10k);
+        return new GeneratedLoad(prefix, members, claims, largest, over10k);
+    }
+
+    /**
+     * Cumulative probabilities of ranks {@code 1..n} with P(k) proportional to k^-s.
+     */
+    private static double[] zipfCdf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += Math.pow(k, -s);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, SplittableRandom random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return (index >= 0 ? index : -index - 1) + 1;
+    }
+}
@@ -0,0 +1,77 @@
+#!/usr/bin/env bash
+#
+# Before/after start-to-first-delete for the fast-startup build (./mvnw -Pfast-startup package).
+#
+# Starts the application RUNS times as a plain jar ("before") and RUNS times as the extracted jar with
+# the AOT initializers and the AppCDS archive ("after"), submits the same delete job to each and reads
+# claims.delete.startup.first.delete (ms from JVM start to the first member delete) from the actuator.
+# Prints every run and the median of each variant.
+#
+# The job really deletes, so point it at a test payer and manifest on a non-production cluster, with
+# the same configuration the task container uses (environment or APP_ARGS). A job archives its
+# manifest, so each run submits a fresh copy of the template manifest (aws s3 cp within SOURCE_BUCKET);
+# the copies end up archived like any other. Checkpoints and the deleted member index are disabled, so
+# every run deletes the same members again.
+#
+# Usage: src/startup/first-delete-compare.sh <payerKey> <template manifest key> [runs]
+#   SOURCE_BUCKET  the ntclaims.source.bucket the jobs read manifests from (required)
+#   BEFORE_JAR     jar to start for "before" (default target/<name>.jar, same build without AOT/CDS);
+#                  point it at an older build to include the code changes in the comparison
+#   APP_ARGS       extra application arguments, e.g. "--spring.profiles.active=staging"
+#   PORT           HTTP port for the runs (default 18080)
+
+set -euo pipefail
+
+payer_key=${1:?payerKey required}
+template=${2:?template manifest key required}
+source_bucket=${SOURCE_BUCKET:?SOURCE_BUCKET required}
+runs=${3:-5}
+port=${PORT:-18080}
+
+cd "$(dirname "$0")/../.."
+extracted=target/extracted
+after_jar=$(ls "$extracted"/*.jar | head -n 1)
+before_jar=${BEFORE_JAR:-target/$(basename "$after_jar")}
+archive=$extracted/application.jsa
+[[ -f $before_jar && -f $archive ]] || { echo "Run ./mvnw -Pfast-startup package first" >&2; exit 1; }
+
+base=http://localhost:$port
+# shellcheck disable=SC2206
+common_args=(--server.port="$port" --ntclaims.delete.checkpoint.enabled=false --ntclaims.delete.dedup.enabled=false ${APP_ARGS:-})
+
+first_delete_ms() {
+    local log pid manifest ms=""
+    manifest="${template%.*}-startup-$(date +%s%N).${template##*.}"
+    aws s3 cp --quiet "s3://$source_bucket/$template" "s3://$source_bucket/$manifest"
+    log=$(mktemp)
+    "$@" "${common_args[@]}" >"$log" 2>&1 &
+    pid=$!
+    until curl -sf "$base/actuator/health" >/dev/null; do
+        kill -0 "$pid" 2>/dev/null || { echo "Application exited; see $log" >&2; return 1; }
+        sleep 0.05
+    done
+    curl -sf -X POST "$base/claims-delete/jobs" -H 'Content-Type: application/json' \
+        -d "{\"payerKey\": $payer_key, \"files\": [\"$manifest\"]}" >/dev/null
+    while [[ -z $ms || $ms == 0 ]]; do
+        sleep 0.05
+        ms=$(curl -sf "$base/actuator/metrics/claims.delete.startup.first.delete" \
+            | sed -n 's/.*"value":\([0-9.]*\).*/\1/p')
+    done
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    rm -f "$log"
+    printf '%.0f\n' "$ms"
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+before=()
+after=()
+for ((i = 1; i <= runs; i++)); do
+    before+=("$(first_delete_ms java -jar "$before_jar")")
+    after+=("$(first_delete_ms java -XX:SharedArchiveFile="$archive" -Dspring.aot.enabled=true -jar "$after_jar")")
+    echo "run $i: before ${before[-1]} ms, after ${after[-1]} ms"
+done
+echo "median start-to-first-delete: before $(printf '%s\n' "${before[@]}" | median) ms, after $(printf '%s\n' "${after[@]}" | median) ms"
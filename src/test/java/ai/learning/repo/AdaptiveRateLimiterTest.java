@@ -0,0 +1,150 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveRateLimiterTest {
+
+    private static final long FAST_MS = 1;
+
+    private static final long SLOW_MS = 500;
+
+    @Test
+    void increasesAdditivelyUpToTheMaximum() {
+        // No interval: every success closes one.
+        AdaptiveRateLimiter limiter = limiter(100, 10, 150, 0, 0);
+
+        limiter.onSuccess(millis(FAST_MS));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(120.0);
+        limiter.onSuccess(millis(FAST_MS));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(140.0);
+        limiter.onSuccess(millis(FAST_MS));
+        limiter.onSuccess(millis(FAST_MS));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(150.0);
+    }
+
+    @Test
+    void doesNotIncreaseAfterAnIntervalWithSlowStatements() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 0, 0);
+
+        limiter.onSuccess(millis(SLOW_MS));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(100.0);
+        limiter.onSuccess(millis(FAST_MS));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(120.0);
+    }
+
+    @Test
+    void increasesAtMostOncePerInterval() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 60_000, 0);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess(millis(FAST_MS));
+        }
+
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(100.0);
+    }
+
+    @Test
+    void decreasesMultiplicativelyOnCongestionDownToTheMinimum() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 0, 0);
+
+        limiter.onError(new DriverTimeoutException("timed out"));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(50.0);
+        limiter.onError(new CompletionException(new DriverTimeoutException("timed out")));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(25.0);
+        limiter.onError(new DriverTimeoutException("timed out"));
+        limiter.onError(new DriverTimeoutException("timed out"));
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(10.0);
+    }
+
+    @Test
+    void ignoresErrorsThatAreNotCongestion() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 0, 0);
+
+        limiter.onError(new IllegalStateException("bad statement"));
+
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(100.0);
+    }
+
+    @Test
+    void countsOneBurstOfFailuresOnceWithinTheCooldown() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 0, 60_000);
+
+        limiter.onError(new DriverTimeoutException("timed out"));
+        limiter.onError(new DriverTimeoutException("timed out"));
+        limiter.onError(new DriverTimeoutException("timed out"));
+
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(50.0);
+    }
+
+    @Test
+    void holdsTheDecreasedRateForAFullInterval() {
+        AdaptiveRateLimiter limiter = limiter(100, 10, 1000, 60_000, 0);
+
+        limiter.onError(new DriverTimeoutException("timed out"));
+        limiter.onSuccess(millis(FAST_MS));
+
+        assertThat(limiter.getPermitsPerSecond()).isEqualTo(50.0);
+    }
+
+    @Test
+    void reservesOneSlotPerStatementAtTheCurrentRate() {
+        // 10 statements/sec: one slot every 100ms.
+        AdaptiveRateLimiter limiter = limiter(10, 1, 10, 60_000, 60_000);
+        long start = System.nanoTime();
+
+        CompletionStage<Void> first = limiter.acquireAsync();
+        CompletableFuture<Void> second = limiter.acquireAsync().toCompletableFuture();
+        CompletableFuture<Void> third = limiter.acquireAsync().toCompletableFuture();
+
+        assertThat(first.toCompletableFuture()).isDone();
+        assertThat(second).isNotDone();
+        second.join();
+        assertThat(third).isNotDone();
+        third.join();
+        assertThat(elapsedMillis(start)).isGreaterThanOrEqualTo(190);
+    }
+
+    @Test
+    void blockingAcquireWaitsForItsSlot() {
+        // 20 statements/sec: one slot every 50ms.
+        AdaptiveRateLimiter limiter = limiter(20, 1, 20, 60_000, 60_000);
+        long start = System.nanoTime();
+
+        limiter.acquire();
+        assertThat(elapsedMillis(start)).isLessThan(50);
+        limiter.acquire();
+        limiter.acquire();
+
+        assertThat(elapsedMillis(start)).isGreaterThanOrEqualTo(95);
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThatThrownBy(() -> limiter(100, 200, 100, 0, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveRateLimiter(100, 10, 1000, 20, 1.0, 100, 0, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // +20/s per interval, x0.5 on congestion, 100ms latency target.
+    private static AdaptiveRateLimiter limiter(double initial, double min, double max,
+                                               long increaseIntervalMs, long decreaseCooldownMs) {
+        return new AdaptiveRateLimiter(initial, min, max, 20, 0.5, 100, increaseIntervalMs, decreaseCooldownMs);
+    }
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,99 @@
+package com.nontrauma.migration.migrationutil.repository;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DupDeleteBatcherTest {
+
+    private static final ConsistencyLevel CONSISTENCY = DefaultConsistencyLevel.LOCAL_QUORUM;
+
+    private static final String PARTITION = "payer-42/member-7";
+
+    private static final int PAYLOAD_BYTES = 100;
+
+    @Test
+    void closesABatchAtTheStatementCap() {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(3, Integer.MAX_VALUE, CONSISTENCY);
+
+        assertThat(batcher.add(PARTITION, statement(1), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add(PARTITION, statement(2), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add(PARTITION, statement(3), PAYLOAD_BYTES)).isNull();
+        BatchStatement closed = batcher.add(PARTITION, statement(4), PAYLOAD_BYTES);
+
+        assertThat(closed).isNotNull();
+        assertThat(closed.size()).isEqualTo(3);
+        assertThat(closed.getBatchType()).isEqualTo(DefaultBatchType.UNLOGGED);
+        assertThat(closed.getConsistencyLevel()).isEqualTo(CONSISTENCY);
+        assertThat(batcher.flush().size()).isEqualTo(1);
+    }
+
+    @Test
+    void closesABatchBeforeItExceedsThePayloadBudget() {
+        int perStatement = PAYLOAD_BYTES + DupDeleteBatcher.STATEMENT_OVERHEAD_BYTES;
+        DupDeleteBatcher batcher = new DupDeleteBatcher(30, 2 * perStatement, CONSISTENCY);
+
+        assertThat(batcher.add(PARTITION, statement(1), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add(PARTITION, statement(2), PAYLOAD_BYTES)).isNull();
+        BatchStatement closed = batcher.add(PARTITION, statement(3), PAYLOAD_BYTES);
+
+        assertThat(closed.size()).isEqualTo(2);
+        assertThat(batcher.flush().size()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsAStatementLargerThanTheBudgetOnItsOwn() {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(30, PAYLOAD_BYTES, CONSISTENCY);
+
+        assertThat(batcher.add(PARTITION, statement(1), 10 * PAYLOAD_BYTES)).isNull();
+        BatchStatement closed = batcher.add(PARTITION, statement(2), 1);
+
+        assertThat(closed.size()).isEqualTo(1);
+        assertThat(batcher.flush().size()).isEqualTo(1);
+    }
+
+    @Test
+    void neverMixesPartitionsInOneBatch() {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(30, Integer.MAX_VALUE, CONSISTENCY);
+
+        assertThat(batcher.add(PARTITION, statement(1), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add(PARTITION, statement(2), PAYLOAD_BYTES)).isNull();
+        BatchStatement closed = batcher.add("payer-42/member-8", statement(3), PAYLOAD_BYTES);
+
+        assertThat(closed.size()).isEqualTo(2);
+        assertThat(batcher.flush().size()).isEqualTo(1);
+    }
+
+    @Test
+    void startsOverAfterAFlush() {
+        DupDeleteBatcher batcher = new DupDeleteBatcher(2, Integer.MAX_VALUE, CONSISTENCY);
+        assertThat(batcher.flush()).isNull();
+
+        batcher.add(PARTITION, statement(1), PAYLOAD_BYTES);
+        batcher.add(PARTITION, statement(2), PAYLOAD_BYTES);
+        assertThat(batcher.flush().size()).isEqualTo(2);
+        assertThat(batcher.flush()).isNull();
+
+        assertThat(batcher.add("payer-42/member-8", statement(3), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add("payer-42/member-8", statement(4), PAYLOAD_BYTES)).isNull();
+        assertThat(batcher.add("payer-42/member-8", statement(5), PAYLOAD_BYTES).size()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectsNonPositiveLimits() {
+        assertThatThrownBy(() -> new DupDeleteBatcher(0, 1000, CONSISTENCY))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DupDeleteBatcher(30, 0, CONSISTENCY))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SimpleStatement statement(int claimNumber) {
+        return SimpleStatement.newInstance("DELETE FROM claims_dup WHERE claimnumber = ?", "claim-" + claimNumber);
+    }
+}
@@ -0,0 +1,212 @@
+package ai.learning.service;
+
+import ai.learning.service.ChatModelScheduler.Priority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatModelSchedulerTest {
+
+    private static final Duration LONG_BUDGET = Duration.ofSeconds(30);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private ChatModelScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void runsInteractiveAheadOfBatchAndFifoWithinAPriority() throws Exception {
+        scheduler = scheduler(1, 10, LONG_BUDGET, LONG_BUDGET, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = occupy(release);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        CompletableFuture<?> batch1 = scheduler.call(Priority.BATCH, () -> order.add("batch-1"));
+        CompletableFuture<?> interactive1 = scheduler.call(Priority.INTERACTIVE, () -> order.add("interactive-1"));
+        CompletableFuture<?> batch2 = scheduler.call(Priority.BATCH, () -> order.add("batch-2"));
+        CompletableFuture<?> interactive2 = scheduler.call(Priority.INTERACTIVE, () -> order.add("interactive-2"));
+        assertThat(queueDepth(Priority.INTERACTIVE)).isEqualTo(2);
+        assertThat(queueDepth(Priority.BATCH)).isEqualTo(2);
+
+        release.countDown();
+        CompletableFuture.allOf(running, batch1, interactive1, batch2, interactive2).get(5, TimeUnit.SECONDS);
+
+        assertThat(order).containsExactly("interactive-1", "interactive-2", "batch-1", "batch-2");
+        assertThat(queueDepth(Priority.INTERACTIVE)).isZero();
+        assertThat(queueDepth(Priority.BATCH)).isZero();
+    }
+
+    @Test
+    void refusesWhenTheQueueIsFull() {
+        scheduler = scheduler(1, 1, LONG_BUDGET, LONG_BUDGET, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        occupy(release);
+        scheduler.call(Priority.BATCH, () -> "queued");
+
+        try {
+            assertThatThrownBy(() -> scheduler.call(Priority.INTERACTIVE, () -> "refused"))
+                    .isInstanceOfSatisfying(ChatOverloadedException.class,
+                            e -> assertThat(e.getRetryAfter()).isPositive())
+                    .hasMessageContaining("queue is full");
+            assertThat(rejected("queue_full")).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void refusesWhenTheExpectedWaitExceedsThePriorityBudget() {
+        // Each generation is expected to take 1s; interactive requests may wait 1.5s.
+        scheduler = scheduler(1, 10, Duration.ofMillis(1500), LONG_BUDGET, Duration.ofSeconds(1));
+        CountDownLatch release = new CountDownLatch(1);
+        occupy(release);
+
+        try {
+            // One generation ahead: 1s expected, within budget.
+            scheduler.call(Priority.INTERACTIVE, () -> "first");
+            // Two ahead: 2s expected.
+            assertThatThrownBy(() -> scheduler.call(Priority.INTERACTIVE, () -> "second"))
+                    .isInstanceOf(ChatOverloadedException.class)
+                    .hasMessageContaining("exceeds the interactive budget");
+            // Batch waits behind the queued interactive request too, but within its larger budget.
+            scheduler.call(Priority.BATCH, () -> "batch");
+            assertThat(rejected("wait_budget")).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void failsARequestStillQueuedWhenItsBudgetRunsOut() throws Exception {
+        scheduler = scheduler(1, 10, Duration.ofMillis(200), LONG_BUDGET, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        occupy(release);
+
+        try {
+            CompletableFuture<String> queued = scheduler.call(Priority.INTERACTIVE, () -> "too late");
+
+            assertThat(queued).failsWithin(Duration.ofSeconds(5))
+                    .withThrowableOfType(ExecutionException.class)
+                    .withCauseInstanceOf(ChatOverloadedException.class);
+            assertThat(queueDepth(Priority.INTERACTIVE)).isZero();
+            assertThat(rejected("expired")).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void cancellingAQueuedStreamLeavesTheQueueWithoutTakingASlot() throws Exception {
+        scheduler = scheduler(1, 10, LONG_BUDGET, LONG_BUDGET, Duration.ofMillis(1));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = occupy(release);
+        List<String> generated = new CopyOnWriteArrayList<>();
+
+        Disposable cancelled = scheduler.stream(Priority.INTERACTIVE, () -> {
+            generated.add("cancelled");
+            return Flux.just("token");
+        }).subscribe();
+        assertThat(queueDepth(Priority.INTERACTIVE)).isEqualTo(1);
+        cancelled.dispose();
+        assertThat(queueDepth(Priority.INTERACTIVE)).isZero();
+
+        CompletableFuture<Boolean> next = scheduler.call(Priority.BATCH, () -> generated.add("next"));
+        release.countDown();
+        next.get(5, TimeUnit.SECONDS);
+        running.get(5, TimeUnit.SECONDS);
+
+        assertThat(generated).containsExactly("next");
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void streamHoldsTheSlotUntilItCompletes() {
+        scheduler = scheduler(1, 10, LONG_BUDGET, LONG_BUDGET, Duration.ofMillis(1));
+
+        List<String> tokens = scheduler.stream(Priority.INTERACTIVE, () -> {
+            assertThat(active()).isEqualTo(1);
+            return Flux.just("a", "b");
+        }).collectList().block(Duration.ofSeconds(5));
+
+        assertThat(tokens).containsExactly("a", "b");
+        assertThat(active()).isZero();
+    }
+
+    @Test
+    void handsTheSlotOnWhenItsWaiterCancelsWhileBeingGranted() throws Exception {
+        scheduler = scheduler(1, 10, LONG_BUDGET, LONG_BUDGET, Duration.ofMillis(1));
+        for (int i = 0; i < 500; i++) {
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Void> running = occupy(release);
+            Disposable waiter = scheduler.stream(Priority.INTERACTIVE, () -> Flux.<String>never()).subscribe();
+
+            // Race the grant against the cancel; either way the slot must come back.
+            Thread canceller = new Thread(waiter::dispose);
+            canceller.start();
+            release.countDown();
+            canceller.join();
+            running.get(5, TimeUnit.SECONDS);
+
+            assertThat(scheduler.call(Priority.INTERACTIVE, () -> "after").get(5, TimeUnit.SECONDS)).isEqualTo("after");
+        }
+        assertThat(active()).isZero();
+        assertThat(queueDepth(Priority.INTERACTIVE)).isZero();
+    }
+
+    private ChatModelScheduler scheduler(int maxConcurrent, int queueCapacity, Duration interactiveBudget,
+                                         Duration batchBudget, Duration initialGenerationTime) {
+        return new ChatModelScheduler(registry, maxConcurrent, queueCapacity, interactiveBudget, batchBudget,
+                initialGenerationTime);
+    }
+
+    // Takes the only slot until release is counted down.
+    private CompletableFuture<Void> occupy(CountDownLatch release) {
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Void> running = scheduler.call(Priority.INTERACTIVE, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        try {
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        return running;
+    }
+
+    private int queueDepth(Priority priority) {
+        return (int) registry.get("ai.scheduler.queue.depth").tag("priority", priority.name().toLowerCase(Locale.ROOT)).gauge().value();
+    }
+
+    private int active() {
+        return (int) registry.get("ai.scheduler.active").gauge().value();
+    }
+
+    private long rejected(String reason) {
+        return (long) registry.get("ai.scheduler.rejected").tag("reason", reason).counter().count();
+    }
+}
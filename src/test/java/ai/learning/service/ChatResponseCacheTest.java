@@ -0,0 +1,75 @@
+package ai.learning.service;
+
+import ai.learning.service.ChatModelScheduler.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatResponseCacheTest {
+
+    private final ChatResponseCache cache = new ChatResponseCache(new SimpleMeterRegistry(), true, 100,
+            Duration.ofMinutes(10), "mistral", null);
+
+    private final List<CompletableFuture<String>> generations = new ArrayList<>();
+
+    @Test
+    void sharesAGenerationWithEquallyOrLessUrgentRequests() {
+        CompletableFuture<String> interactive = cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate);
+        CompletableFuture<String> batch = cache.get("Tell me a joke", Priority.BATCH, this::generate);
+        CompletableFuture<String> again = cache.get("Tell me  a joke ", Priority.INTERACTIVE, this::generate);
+
+        assertThat(generations).hasSize(1);
+        assertThat(batch).isSameAs(interactive);
+        assertThat(again).isSameAs(interactive);
+    }
+
+    @Test
+    void aMoreUrgentRequestDoesNotJoinABatchGeneration() {
+        CompletableFuture<String> batch = cache.get("Tell me a joke", Priority.BATCH, this::generate);
+        CompletableFuture<String> interactive = cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate);
+        CompletableFuture<String> laterBatch = cache.get("Tell me a joke", Priority.BATCH, this::generate);
+
+        assertThat(generations).hasSize(2);
+        assertThat(interactive).isNotSameAs(batch);
+        assertThat(laterBatch).isSameAs(interactive);
+
+        generations.get(1).complete("interactive answer");
+        generations.get(0).complete("batch answer");
+        assertThat(batch).isCompletedWithValue("batch answer");
+        assertThat(interactive).isCompletedWithValue("interactive answer");
+        assertThat(cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate))
+                .isCompletedWithValue("interactive answer");
+        assertThat(generations).hasSize(2);
+    }
+
+    @Test
+    void servesACompletedBatchResponseToInteractiveRequests() {
+        CompletableFuture<String> batch = cache.get("Tell me a joke", Priority.BATCH, this::generate);
+        generations.get(0).complete("answer");
+
+        assertThat(cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate)).isSameAs(batch);
+        assertThat(generations).hasSize(1);
+    }
+
+    @Test
+    void doesNotCacheAFailedGeneration() {
+        CompletableFuture<String> failed = cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate);
+        generations.get(0).completeExceptionally(new ChatOverloadedException("busy", Duration.ofSeconds(1)));
+
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(cache.get("Tell me a joke", Priority.INTERACTIVE, this::generate)).isNotSameAs(failed);
+        assertThat(generations).hasSize(2);
+    }
+
+    private CompletableFuture<String> generate(String prompt) {
+        CompletableFuture<String> generation = new CompletableFuture<>();
+        generations.add(generation);
+        return generation;
+    }
+}
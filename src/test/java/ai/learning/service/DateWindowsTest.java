@@ -0,0 +1,118 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DateWindowsTest {
+
+    private static final LocalDate FROM = LocalDate.of(2020, 1, 1);
+
+    private record Chunk(LocalDate from, LocalDate to) {
+    }
+
+    private final List<Chunk> deleted = new ArrayList<>();
+
+    private final List<Integer> shrunkTo = new ArrayList<>();
+
+    @Test
+    void deletesAWindowTheChunkCoversInOneStatement() {
+        DateWindows.Result result = DateWindows.deleteAdaptive(FROM, FROM.plusMonths(12), 12,
+                recording(3), e -> true, this::onShrink);
+
+        assertThat(result).isEqualTo(new DateWindows.Result(12, 3));
+        assertThat(deleted).containsExactly(new Chunk(FROM, FROM.plusMonths(12)));
+    }
+
+    @Test
+    void walksALongerWindowInChunksEndingAtTheWindowEnd() {
+        LocalDate to = LocalDate.of(2021, 3, 15);
+
+        DateWindows.Result result = DateWindows.deleteAdaptive(FROM, to, 6, recording(2), e -> true, this::onShrink);
+
+        assertThat(result).isEqualTo(new DateWindows.Result(6, 6));
+        assertThat(deleted).containsExactly(
+                new Chunk(FROM, LocalDate.of(2020, 7, 1)),
+                new Chunk(LocalDate.of(2020, 7, 1), LocalDate.of(2021, 1, 1)),
+                new Chunk(LocalDate.of(2021, 1, 1), to));
+        assertThat(shrunkTo).isEmpty();
+    }
+
+    @Test
+    void shrinksDownTheLadderAndRerunsTheWholeWindow() {
+        LocalDate to = FROM.plusMonths(2);
+        // Only 1-month chunks are small enough.
+        DateWindows.RangeDelete rangeDelete = (from, until) -> {
+            if (DateWindows.monthsBetween(from, until) > 1) {
+                throw new IllegalStateException("too large");
+            }
+            deleted.add(new Chunk(from, until));
+            return 1;
+        };
+
+        DateWindows.Result result = DateWindows.deleteAdaptive(FROM, FROM.plusYears(2), 12, rangeDelete,
+                e -> e instanceof IllegalStateException, this::onShrink);
+
+        assertThat(result).isEqualTo(new DateWindows.Result(1, 24));
+        assertThat(shrunkTo).containsExactly(6, 3, 1);
+        assertThat(deleted).hasSize(24).startsWith(new Chunk(FROM, FROM.plusMonths(1)), new Chunk(FROM.plusMonths(1), to));
+    }
+
+    @Test
+    void rethrowsErrorsThatDoNotCallForSmallerChunks() {
+        RuntimeException failure = new IllegalArgumentException("bad query");
+
+        assertThatThrownBy(() -> DateWindows.deleteAdaptive(FROM, FROM.plusYears(1), 12,
+                (from, to) -> {
+                    throw failure;
+                }, e -> e instanceof IllegalStateException, this::onShrink))
+                .isSameAs(failure);
+        assertThat(shrunkTo).isEmpty();
+    }
+
+    @Test
+    void rethrowsWhenEvenOneMonthChunksFail() {
+        RuntimeException failure = new IllegalStateException("too large");
+
+        assertThatThrownBy(() -> DateWindows.deleteAdaptive(FROM, FROM.plusMonths(5), 3,
+                (from, to) -> {
+                    throw failure;
+                }, e -> true, this::onShrink))
+                .isSameAs(failure);
+        assertThat(shrunkTo).containsExactly(1);
+    }
+
+    @Test
+    void deletesNothingForAnEmptyWindow() {
+        DateWindows.Result result = DateWindows.deleteAdaptive(FROM, FROM, 6, recording(1), e -> true, this::onShrink);
+
+        assertThat(result).isEqualTo(new DateWindows.Result(6, 0));
+        assertThat(deleted).isEmpty();
+    }
+
+    @Test
+    void laddersAndCountsMonths() {
+        assertThat(DateWindows.nextSmallerChunk(12)).isEqualTo(6);
+        assertThat(DateWindows.nextSmallerChunk(6)).isEqualTo(3);
+        assertThat(DateWindows.nextSmallerChunk(3)).isEqualTo(1);
+        assertThat(DateWindows.nextSmallerChunk(1)).isEqualTo(1);
+        assertThat(DateWindows.monthsBetween(LocalDate.of(2019, 11, 1), LocalDate.of(2021, 2, 1))).isEqualTo(15);
+        assertThat(DateWindows.monthsBetween(FROM, FROM)).isZero();
+    }
+
+    private DateWindows.RangeDelete recording(int dupRowsPerChunk) {
+        return (from, to) -> {
+            deleted.add(new Chunk(from, to));
+            return dupRowsPerChunk;
+        };
+    }
+
+    private void onShrink(int nextMonthsPerChunk, RuntimeException cause) {
+        shrunkTo.add(nextMonthsPerChunk);
+    }
+}
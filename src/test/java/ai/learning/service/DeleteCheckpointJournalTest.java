@@ -0,0 +1,181 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeleteCheckpointJournalTest {
+
+    private static final long PAYER_KEY = 42L;
+
+    private static final String FILE_KEY = "raw/payer-42/members-0001.ndjson";
+
+    // type + memberKey + from epoch day + to epoch day, as written by the journal.
+    private static final int RECORD_BYTES = 1 + Long.BYTES + Integer.BYTES + Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private DeleteCheckpointJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        journal = new DeleteCheckpointJournal(true, directory.toString(), 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.shutdown();
+    }
+
+    @Test
+    void replaysMembersAndWindowsAfterReopen() {
+        LocalDate from = LocalDate.of(2020, 1, 1);
+        LocalDate to = LocalDate.of(2021, 1, 1);
+
+        FileCheckpoint checkpoint = journal.open(PAYER_KEY, FILE_KEY);
+        checkpoint.memberDone(7L);
+        checkpoint.memberDone(0L);
+        checkpoint.memberDone(-3L);
+        checkpoint.windowDone(9L, from, to);
+        journal.close(checkpoint);
+
+        FileCheckpoint reopened = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(reopened.isMemberDone(7L)).isTrue();
+        assertThat(reopened.isMemberDone(0L)).isTrue();
+        assertThat(reopened.isMemberDone(-3L)).isTrue();
+        assertThat(reopened.isMemberDone(8L)).isFalse();
+        assertThat(reopened.isWindowDone(9L, from, to)).isTrue();
+        assertThat(reopened.isWindowDone(9L, to, to.plusYears(1))).isFalse();
+        journal.close(reopened);
+    }
+
+    @Test
+    void replaysMoreRecordsThanOneBuffer() {
+        FileCheckpoint checkpoint = journal.open(PAYER_KEY, FILE_KEY);
+        for (long memberKey = 1; memberKey <= 10_000; memberKey++) {
+            checkpoint.memberDone(memberKey);
+        }
+        journal.close(checkpoint);
+
+        FileCheckpoint reopened = journal.open(PAYER_KEY, FILE_KEY);
+        for (long memberKey = 1; memberKey <= 10_000; memberKey++) {
+            assertThat(reopened.isMemberDone(memberKey)).as("member %d", memberKey).isTrue();
+        }
+        assertThat(reopened.isMemberDone(10_001L)).isFalse();
+        journal.close(reopened);
+    }
+
+    @Test
+    void truncatesTornTrailingRecordAndKeepsAppendsAligned() throws IOException {
+        FileCheckpoint checkpoint = journal.open(PAYER_KEY, FILE_KEY);
+        checkpoint.memberDone(1L);
+        checkpoint.memberDone(2L);
+        journal.close(checkpoint);
+
+        // A crash in the middle of a write leaves part of the next record behind.
+        Path file = journalFile();
+        Files.write(file, new byte[] {1, 0, 0, 0, 0, 0}, StandardOpenOption.APPEND);
+        assertThat(Files.size(file)).isEqualTo(2L * RECORD_BYTES + 6);
+
+        FileCheckpoint afterCrash = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(Files.size(file)).isEqualTo(2L * RECORD_BYTES);
+        assertThat(afterCrash.isMemberDone(1L)).isTrue();
+        assertThat(afterCrash.isMemberDone(2L)).isTrue();
+        afterCrash.memberDone(3L);
+        journal.close(afterCrash);
+
+        FileCheckpoint reopened = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(Files.size(file)).isEqualTo(3L * RECORD_BYTES);
+        assertThat(reopened.isMemberDone(1L)).isTrue();
+        assertThat(reopened.isMemberDone(2L)).isTrue();
+        assertThat(reopened.isMemberDone(3L)).isTrue();
+        journal.close(reopened);
+    }
+
+    @Test
+    void completeRemovesTheJournal() throws IOException {
+        FileCheckpoint checkpoint = journal.open(PAYER_KEY, FILE_KEY);
+        checkpoint.memberDone(1L);
+        journal.close(checkpoint);
+
+        journal.complete(PAYER_KEY, FILE_KEY);
+
+        FileCheckpoint reopened = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(reopened.isMemberDone(1L)).isFalse();
+        journal.close(reopened);
+    }
+
+    @Test
+    void jobsOnTheSameFileShareOneJournal() throws IOException {
+        FileCheckpoint first = journal.open(PAYER_KEY, FILE_KEY);
+        FileCheckpoint second = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(second).isSameAs(first);
+
+        first.memberDone(1L);
+        assertThat(second.isMemberDone(1L)).isTrue();
+        second.memberDone(1L);
+        second.memberDone(2L);
+
+        // The first job finishing must not close the journal under the second.
+        journal.close(first);
+        second.memberDone(3L);
+        journal.close(second);
+
+        assertThat(Files.size(journalFile())).isEqualTo(3L * RECORD_BYTES);
+        FileCheckpoint reopened = journal.open(PAYER_KEY, FILE_KEY);
+        assertThat(reopened).isNotSameAs(first);
+        assertThat(reopened.isMemberDone(1L)).isTrue();
+        assertThat(reopened.isMemberDone(2L)).isTrue();
+        assertThat(reopened.isMemberDone(3L)).isTrue();
+        journal.close(reopened);
+    }
+
+    @Test
+    void completeWaitsForTheLastHolder() throws IOException {
+        FileCheckpoint first = journal.open(PAYER_KEY, FILE_KEY);
+        FileCheckpoint second = journal.open(PAYER_KEY, FILE_KEY);
+        first.memberDone(1L);
+        journal.close(first);
+
+        journal.complete(PAYER_KEY, FILE_KEY);
+        assertThat(journalFile()).exists();
+
+        journal.close(second);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void disabledJournalRemembersNothing() {
+        DeleteCheckpointJournal disabled = new DeleteCheckpointJournal(false, directory.toString(), 60_000);
+        try {
+            FileCheckpoint checkpoint = disabled.open(PAYER_KEY, FILE_KEY);
+            checkpoint.memberDone(1L);
+            assertThat(checkpoint).isSameAs(FileCheckpoint.NONE);
+            assertThat(checkpoint.isMemberDone(1L)).isFalse();
+        } finally {
+            disabled.shutdown();
+        }
+    }
+
+    private Path journalFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> journals = files.filter(path -> path.toString().endsWith(".ckpt")).toList();
+            assertThat(journals).hasSize(1);
+            return journals.get(0);
+        }
+    }
+}
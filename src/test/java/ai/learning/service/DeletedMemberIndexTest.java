@@ -0,0 +1,169 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeletedMemberIndexTest {
+
+    private static final long PAYER_KEY = 42L;
+
+    private static final long OTHER_PAYER_KEY = 43L;
+
+    private static final long NO_TTL = 0;
+
+    @TempDir
+    Path directory;
+
+    private final List<DeletedMemberIndex> indexes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        indexes.forEach(DeletedMemberIndex::shutdown);
+    }
+
+    @Test
+    void recordsMembersPerPayer() {
+        DeletedMemberIndex index = index(true, NO_TTL);
+
+        index.add(PAYER_KEY, 7L);
+        index.add(PAYER_KEY, 7L);
+        index.add(PAYER_KEY, -1L);
+        index.add(OTHER_PAYER_KEY, 8L);
+
+        assertThat(index.contains(PAYER_KEY, 7L)).isTrue();
+        assertThat(index.contains(PAYER_KEY, -1L)).isTrue();
+        assertThat(index.contains(PAYER_KEY, 8L)).isFalse();
+        assertThat(index.contains(OTHER_PAYER_KEY, 8L)).isTrue();
+        assertThat(index.size(PAYER_KEY)).isEqualTo(2);
+        assertThat(index.size(OTHER_PAYER_KEY)).isEqualTo(1);
+    }
+
+    @Test
+    void reloadsAPersistedSetAfterRestart() {
+        DeletedMemberIndex index = index(true, NO_TTL);
+        index.add(PAYER_KEY, 7L);
+        index.add(PAYER_KEY, Long.MAX_VALUE);
+        index.persist(PAYER_KEY);
+
+        DeletedMemberIndex restarted = index(true, NO_TTL);
+
+        assertThat(restarted.contains(PAYER_KEY, 7L)).isTrue();
+        assertThat(restarted.contains(PAYER_KEY, Long.MAX_VALUE)).isTrue();
+        assertThat(restarted.contains(PAYER_KEY, 8L)).isFalse();
+        assertThat(restarted.size(PAYER_KEY)).isEqualTo(2);
+    }
+
+    @Test
+    void writesTheSetAtShutdown() {
+        DeletedMemberIndex index = index(true, NO_TTL);
+        index.add(PAYER_KEY, 7L);
+        index.shutdown();
+
+        assertThat(index(true, NO_TTL).contains(PAYER_KEY, 7L)).isTrue();
+    }
+
+    @Test
+    void countsASnapshotWithoutLoadingIt() throws IOException {
+        DeletedMemberIndex index = index(true, NO_TTL);
+        index.add(PAYER_KEY, 7L);
+        index.add(PAYER_KEY, 9L);
+        index.persist(PAYER_KEY);
+
+        DeletedMemberIndex restarted = index(true, NO_TTL);
+        assertThat(restarted.size(PAYER_KEY)).isEqualTo(2);
+        assertThat(restarted.size(OTHER_PAYER_KEY)).isZero();
+
+        // Nothing was kept: the count follows the file, and no set is written back for either payer.
+        Files.delete(snapshot(PAYER_KEY));
+        assertThat(restarted.size(PAYER_KEY)).isZero();
+        restarted.shutdown();
+        assertThat(snapshot(PAYER_KEY)).doesNotExist();
+        assertThat(snapshot(OTHER_PAYER_KEY)).doesNotExist();
+    }
+
+    @Test
+    void forgetDropsTheSetInMemoryAndOnDisk() {
+        DeletedMemberIndex index = index(true, NO_TTL);
+        index.add(PAYER_KEY, 7L);
+        index.persist(PAYER_KEY);
+
+        index.forget(PAYER_KEY);
+
+        assertThat(index.contains(PAYER_KEY, 7L)).isFalse();
+        assertThat(snapshot(PAYER_KEY)).doesNotExist();
+        index.shutdown();
+        assertThat(index(true, NO_TTL).contains(PAYER_KEY, 7L)).isFalse();
+    }
+
+    @Test
+    void forgetRemovesASnapshotThatWasNeverLoaded() {
+        DeletedMemberIndex index = index(true, NO_TTL);
+        index.add(PAYER_KEY, 7L);
+        index.persist(PAYER_KEY);
+
+        index(true, NO_TTL).forget(PAYER_KEY);
+
+        assertThat(snapshot(PAYER_KEY)).doesNotExist();
+    }
+
+    @Test
+    void ignoresAnExpiredSnapshot() throws IOException {
+        Roaring64Bitmap keys = new Roaring64Bitmap();
+        keys.addLong(7L);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(snapshot(PAYER_KEY)))) {
+            out.writeInt(0x4E54444D);
+            out.writeInt(2);
+            out.writeLong(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+            keys.serialize(out);
+        }
+
+        assertThat(index(true, 1).size(PAYER_KEY)).isZero();
+        assertThat(index(true, 1).contains(PAYER_KEY, 7L)).isFalse();
+        assertThat(index(true, 3).contains(PAYER_KEY, 7L)).isTrue();
+    }
+
+    @Test
+    void ignoresAnUnreadableSnapshot() throws IOException {
+        Files.writeString(snapshot(PAYER_KEY), "not a bitmap");
+        DeletedMemberIndex index = index(true, NO_TTL);
+
+        assertThat(index.size(PAYER_KEY)).isZero();
+        assertThat(index.contains(PAYER_KEY, 7L)).isFalse();
+        index.add(PAYER_KEY, 7L);
+        assertThat(index.contains(PAYER_KEY, 7L)).isTrue();
+    }
+
+    @Test
+    void recordsNothingWhenDisabled() {
+        DeletedMemberIndex index = index(false, NO_TTL);
+
+        index.add(PAYER_KEY, 7L);
+        index.persist(PAYER_KEY);
+
+        assertThat(index.contains(PAYER_KEY, 7L)).isFalse();
+        assertThat(index.size(PAYER_KEY)).isZero();
+        assertThat(snapshot(PAYER_KEY)).doesNotExist();
+    }
+
+    private DeletedMemberIndex index(boolean enabled, long ttlHours) {
+        DeletedMemberIndex index = new DeletedMemberIndex(enabled, directory.toString(), 60_000, ttlHours);
+        indexes.add(index);
+        return index;
+    }
+
+    private Path snapshot(long payerKey) {
+        return directory.resolve(payerKey + ".members");
+    }
+}
@@ -0,0 +1,49 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryDeleteJobRegistryTest {
+
+    @Test
+    void keepsTheNewestFinishedJobsUpToTheLimit() throws InterruptedException {
+        InMemoryDeleteJobRegistry registry = new InMemoryDeleteJobRegistry(24, 2);
+        DeleteJob running = job("running");
+        registry.register(running);
+        running.markRunning();
+        for (String id : List.of("first", "second", "third")) {
+            DeleteJob job = job(id);
+            registry.register(job);
+            job.markRunning();
+            job.markFinished(DeleteJob.Status.SUCCEEDED, null);
+            // Distinct finish times.
+            Thread.sleep(2);
+        }
+
+        assertThat(registry.list()).extracting(DeleteJob::id)
+                .containsExactlyInAnyOrder("running", "second", "third");
+        assertThat(registry.find("first")).isEmpty();
+        assertThat(registry.find("running")).contains(running);
+    }
+
+    @Test
+    void dropsFinishedJobsAfterTheRetention() {
+        InMemoryDeleteJobRegistry registry = new InMemoryDeleteJobRegistry(0, 100);
+        DeleteJob queued = job("queued");
+        DeleteJob cancelled = job("cancelled");
+        registry.register(queued);
+        registry.register(cancelled);
+
+        cancelled.cancel();
+
+        assertThat(registry.find("cancelled")).isEmpty();
+        assertThat(registry.list()).containsExactly(queued);
+    }
+
+    private static DeleteJob job(String id) {
+        return new DeleteJob(id, 42L, List.of("members-0001.ndjson"), null, 0, null);
+    }
+}
@@ -0,0 +1,75 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongHashSetTest {
+
+    @Test
+    void addsAndFindsKeysIncludingZeroAndNegatives() {
+        LongHashSet set = new LongHashSet();
+
+        assertThat(set.add(0L)).isTrue();
+        assertThat(set.add(-1L)).isTrue();
+        assertThat(set.add(Long.MIN_VALUE)).isTrue();
+        assertThat(set.add(Long.MAX_VALUE)).isTrue();
+        assertThat(set.add(0L)).isFalse();
+        assertThat(set.add(-1L)).isFalse();
+
+        assertThat(set.size()).isEqualTo(4);
+        assertThat(set.contains(0L)).isTrue();
+        assertThat(set.contains(-1L)).isTrue();
+        assertThat(set.contains(Long.MIN_VALUE)).isTrue();
+        assertThat(set.contains(Long.MAX_VALUE)).isTrue();
+        assertThat(set.contains(1L)).isFalse();
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        LongHashSet set = new LongHashSet(4);
+        for (long key = 1; key <= 100_000; key++) {
+            assertThat(set.add(key * 31)).isTrue();
+        }
+
+        assertThat(set.size()).isEqualTo(100_000);
+        for (long key = 1; key <= 100_000; key++) {
+            assertThat(set.contains(key * 31)).isTrue();
+            assertThat(set.contains(key * 31 + 1)).isFalse();
+        }
+    }
+
+    @Test
+    void agreesWithHashSetOnRandomKeys() {
+        Random random = new Random(7);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            // A narrow range so some keys repeat.
+            long key = random.nextInt(20_000) - 10_000;
+            assertThat(set.add(key)).isEqualTo(expected.add(key));
+        }
+
+        assertThat(set.size()).isEqualTo(expected.size());
+        for (long key = -10_000; key < 10_000; key++) {
+            assertThat(set.contains(key)).isEqualTo(expected.contains(key));
+        }
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        LongHashSet set = new LongHashSet();
+        set.add(0L);
+        set.add(5L);
+        set.clear();
+
+        assertThat(set.size()).isZero();
+        assertThat(set.contains(0L)).isFalse();
+        assertThat(set.contains(5L)).isFalse();
+        assertThat(set.add(5L)).isTrue();
+    }
+}
@@ -0,0 +1,106 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemberKeyNdjsonParserTest {
+
+    private final MemberKeyNdjsonParser parser = new MemberKeyNdjsonParser(new JsonFactory());
+
+    private final List<long[]> chunks = new ArrayList<>();
+
+    @Test
+    void readsNumericAndStringMemberKeys() throws IOException {
+        long total = parse(4, """
+                {"payerKey": 42, "memberKey": 7}
+                {"memberKey": "8"}
+                {"memberKey": " -9 ", "payerKey": 42}
+                {"memberKey": 9223372036854775807}
+                """);
+
+        assertThat(total).isEqualTo(4);
+        assertThat(chunks).containsExactly(new long[] {7, 8, -9, Long.MAX_VALUE});
+    }
+
+    @Test
+    void handsKeysOverInChunksOfAtMostTheChunkSize() throws IOException {
+        long total = parse(2, """
+                {"memberKey": 1}
+                {"memberKey": 2}
+                {"memberKey": 3}
+                {"memberKey": 4}
+                {"memberKey": 5}
+                """);
+
+        assertThat(total).isEqualTo(5);
+        assertThat(chunks).containsExactly(new long[] {1, 2}, new long[] {3, 4}, new long[] {5});
+    }
+
+    @Test
+    void skipsOtherFieldsIncludingNestedOnes() throws IOException {
+        long total = parse(10, """
+                {"address": {"memberKey": 99, "lines": ["a", {"memberKey": 98}]}, "memberKey": 1, "tags": []}
+                {"claims": [[1, 2], {"x": null}], "memberKey": 2, "memberKey": 97}
+                """);
+
+        assertThat(total).isEqualTo(2);
+        assertThat(chunks).containsExactly(new long[] {1, 2});
+    }
+
+    @Test
+    void skipsRecordsWithoutAMemberKey() throws IOException {
+        long total = parse(10, """
+                {"memberKey": 1}
+                {"payerKey": 42}
+                {"memberKey": null}
+                {}
+                {"memberKey": 2}
+                """);
+
+        assertThat(total).isEqualTo(2);
+        assertThat(chunks).containsExactly(new long[] {1, 2});
+    }
+
+    @Test
+    void readsNothingFromAnEmptyManifest() throws IOException {
+        assertThat(parse(10, "")).isZero();
+        assertThat(parse(10, "\n\n")).isZero();
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    void rejectsLinesThatAreNotObjects() {
+        assertThatThrownBy(() -> parse(10, """
+                {"memberKey": 1}
+                [2]
+                """))
+                .isInstanceOf(JsonParseException.class)
+                .hasMessageContaining("Expected one JSON object per manifest line");
+    }
+
+    @Test
+    void rejectsAMemberKeyThatIsNotANumber() {
+        assertThatThrownBy(() -> parse(10, """
+                {"memberKey": "abc"}
+                """))
+                .isInstanceOf(NumberFormatException.class);
+    }
+
+    private long parse(int chunkSize, String manifest) throws IOException {
+        InputStream in = new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8));
+        // The parser reuses its array, so keep a copy of each chunk.
+        return parser.parse(in, chunkSize, (memberKeys, length) -> chunks.add(Arrays.copyOf(memberKeys, length)));
+    }
+}
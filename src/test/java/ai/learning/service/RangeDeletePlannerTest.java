@@ -0,0 +1,102 @@
+package com.nontrauma.migration.migrationutil.service;
+
+import com.nontrauma.migration.migrationutil.repository.ServiceDateSpan;
+import com.nontrauma.migration.migrationutil.service.RangeDeletePlanner.SizeClass;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeDeletePlannerTest {
+
+    private static final long PAYER_KEY = 42L;
+
+    private final RangeDeletePlanner planner = new RangeDeletePlanner(3, 2);
+
+    @Test
+    void startsWithWholeYearChunks() {
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(12);
+    }
+
+    @Test
+    void remembersTheSmallestChunkThatWorkedPerPayerAndSizeClass() {
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 12, 3);
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 12, 6);
+
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(3);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.UP_TO_10_YEARS)).isEqualTo(12);
+        assertThat(planner.initialChunkMonths(43L, SizeClass.OVER_10_YEARS)).isEqualTo(12);
+    }
+
+    @Test
+    void growsOneStepAfterAStreakOfFirstTrySuccesses() {
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 12, 1);
+
+        firstTrySuccesses(2, 1);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(1);
+        firstTrySuccesses(1, 1);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(3);
+        firstTrySuccesses(3, 3);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(6);
+        firstTrySuccesses(3, 6);
+        firstTrySuccesses(3, 12);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(12);
+    }
+
+    @Test
+    void aShrunkWindowRestartsTheStreak() {
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 12, 3);
+        firstTrySuccesses(2, 3);
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 3, 1);
+        firstTrySuccesses(2, 1);
+
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(1);
+    }
+
+    @Test
+    void remembersKnownLargeMembersUpToTheCap() {
+        planner.markLarge(PAYER_KEY, 1L);
+        planner.markLarge(PAYER_KEY, 2L);
+        planner.markLarge(PAYER_KEY, 3L);
+
+        assertThat(planner.isKnownLarge(PAYER_KEY, 1L)).isTrue();
+        assertThat(planner.isKnownLarge(PAYER_KEY, 2L)).isTrue();
+        assertThat(planner.isKnownLarge(PAYER_KEY, 3L)).isFalse();
+        assertThat(planner.isKnownLarge(43L, 1L)).isFalse();
+    }
+
+    @Test
+    void scratchCopyStartsFromTheLearnedChunksWithoutTeachingTheOriginal() {
+        planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 12, 6);
+        planner.markLarge(PAYER_KEY, 1L);
+
+        RangeDeletePlanner scratch = planner.scratchCopy();
+        assertThat(scratch.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(6);
+        assertThat(scratch.isKnownLarge(PAYER_KEY, 1L)).isFalse();
+
+        scratch.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, 6, 1);
+        scratch.recordWindow(PAYER_KEY, SizeClass.UP_TO_1_YEAR, 12, 3);
+        scratch.markLarge(PAYER_KEY, 2L);
+
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.OVER_10_YEARS)).isEqualTo(6);
+        assertThat(planner.initialChunkMonths(PAYER_KEY, SizeClass.UP_TO_1_YEAR)).isEqualTo(12);
+        assertThat(planner.isKnownLarge(PAYER_KEY, 2L)).isFalse();
+    }
+
+    @Test
+    void classifiesPartitionsByServiceDateSpan() {
+        LocalDate first = LocalDate.of(2010, 1, 1);
+
+        assertThat(SizeClass.of(new ServiceDateSpan(first, first.plusMonths(11)))).isEqualTo(SizeClass.UP_TO_1_YEAR);
+        assertThat(SizeClass.of(new ServiceDateSpan(first, first.plusMonths(12)))).isEqualTo(SizeClass.UP_TO_5_YEARS);
+        assertThat(SizeClass.of(new ServiceDateSpan(first, first.plusYears(5)))).isEqualTo(SizeClass.UP_TO_10_YEARS);
+        assertThat(SizeClass.of(new ServiceDateSpan(first, first.plusYears(10)))).isEqualTo(SizeClass.OVER_10_YEARS);
+    }
+
+    private void firstTrySuccesses(int count, int months) {
+        for (int i = 0; i < count; i++) {
+            planner.recordWindow(PAYER_KEY, SizeClass.OVER_10_YEARS, months, months);
+        }
+    }
+}